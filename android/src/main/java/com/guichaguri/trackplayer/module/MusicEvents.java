@@ -1,18 +1,18 @@
 package com.guichaguri.trackplayer.module;
 
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.os.Bundle;
-import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
 import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.modules.core.DeviceEventManagerModule.RCTDeviceEventEmitter;
 
 /**
+ * Delivers the events from the service to JS.
+ *
+ * The service and the module live in the same process, so the events are sent directly instead of going through
+ * broadcasts, which would copy each payload into an intent and convert it back.
+ *
  * @author Guichaguri
  */
-public class MusicEvents extends BroadcastReceiver {
+public class MusicEvents {
 
     // Media Control Events
     public static final String BUTTON_PLAY = "remote-play";
@@ -35,21 +35,59 @@ public class MusicEvents extends BroadcastReceiver {
     public static final String PLAYBACK_QUEUE_ENDED = "playback-queue-ended";
     public static final String PLAYBACK_METADATA = "playback-metadata-received";
     public static final String PLAYBACK_ERROR = "playback-error";
+    public static final String PLAYBACK_PROGRESS = "playback-progress";
+    public static final String PLAYBACK_QUEUE_ADD_PROGRESS = "playback-queue-add-progress";
+
+    // Cache Events
+    public static final String CACHE_EVICTION = "cache-eviction";
+
+    // Download Events
+    public static final String DOWNLOAD_CHANGED = "download-changed";
+
+    private static volatile MusicEvents current;
+
+    /**
+     * Sends an event to the JS side of the module that is currently registered
+     * @param event The event name
+     * @param data The event data, which is consumed by the bridge and can't be reused
+     */
+    public static void emit(String event, WritableMap data) {
+        MusicEvents events = current;
+        if(events != null) events.dispatch(event, data);
+    }
 
     private final ReactContext reactContext;
+    private RCTDeviceEventEmitter emitter;
 
     public MusicEvents(ReactContext reactContext) {
         this.reactContext = reactContext;
     }
 
-    @Override
-    public void onReceive(Context context, Intent intent) {
-        String event = intent.getStringExtra("event");
-        Bundle data = intent.getBundleExtra("data");
+    /**
+     * Starts receiving the events from the service
+     */
+    public void register() {
+        current = this;
+    }
+
+    /**
+     * Stops receiving the events, if this is still the registered instance
+     */
+    public void unregister() {
+        if(current == this) current = null;
+    }
+
+    private void dispatch(String event, WritableMap data) {
+        if(!reactContext.hasActiveCatalystInstance()) return;
 
-        WritableMap map = data != null ? Arguments.fromBundle(data) : null;
+        // The JS module proxy is created by the catalyst instance, so it can be kept for as long as it lives
+        RCTDeviceEventEmitter emitter = this.emitter;
+        if(emitter == null) {
+            emitter = reactContext.getJSModule(RCTDeviceEventEmitter.class);
+            this.emitter = emitter;
+        }
 
-        reactContext.getJSModule(RCTDeviceEventEmitter.class).emit(event, map);
+        emitter.emit(event, data);
     }
 
 }
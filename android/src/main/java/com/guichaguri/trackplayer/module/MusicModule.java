@@ -2,20 +2,22 @@ package com.guichaguri.trackplayer.module;
 
 import android.content.ComponentName;
 import android.content.Intent;
-import android.content.IntentFilter;
 import android.content.ServiceConnection;
 import android.os.Bundle;
 import android.os.IBinder;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import android.util.Log;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import com.facebook.react.bridge.*;
 import com.google.android.exoplayer2.C;
 import com.guichaguri.trackplayer.service.MusicBinder;
 import com.guichaguri.trackplayer.service.MusicService;
 import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.PlaybackSnapshot;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
 import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.player.CacheManager;
+import com.guichaguri.trackplayer.service.player.DownloadTracker;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
 
 import javax.annotation.Nonnull;
@@ -25,13 +27,23 @@ import java.util.*;
 /**
  * @author Guichaguri
  */
-public class MusicModule extends ReactContextBaseJavaModule implements ServiceConnection {
+public class MusicModule extends ReactContextBaseJavaModule implements ServiceConnection, LifecycleEventListener {
 
-    private MusicBinder binder;
+    // Amount of tracks parsed and inserted at once when adding big arrays
+    private static final int ADD_CHUNK_SIZE = 200;
+
+    // Longest time a batch holds the metadata updates while it waits for a command
+    private static final long BATCH_TIMEOUT_MS = 5000;
+
+    private volatile MusicBinder binder;
     private MusicEvents eventHandler;
     private ArrayDeque<Runnable> initCallbacks = new ArrayDeque<>();
     private boolean connecting = false;
     private Bundle options;
+    private boolean foreground = true;
+
+    // The player thread while it's running a batch, so the commands inside it run right away
+    private Thread batchThread = null;
 
     public MusicModule(ReactApplicationContext reactContext) {
         super(reactContext);
@@ -45,34 +57,59 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
 
     @Override
     public void initialize() {
-        ReactContext context = getReactApplicationContext();
-        LocalBroadcastManager manager = LocalBroadcastManager.getInstance(context);
+        eventHandler = new MusicEvents(getReactApplicationContext());
+        eventHandler.register();
 
-        eventHandler = new MusicEvents(context);
-        manager.registerReceiver(eventHandler, new IntentFilter(Utils.EVENT_INTENT));
+        getReactApplicationContext().addLifecycleEventListener(this);
     }
 
     @Override
     public void onCatalystInstanceDestroy() {
-        ReactContext context = getReactApplicationContext();
+        getReactApplicationContext().removeLifecycleEventListener(this);
 
         if(eventHandler != null) {
-            LocalBroadcastManager manager = LocalBroadcastManager.getInstance(context);
-
-            manager.unregisterReceiver(eventHandler);
+            eventHandler.unregister();
             eventHandler = null;
         }
     }
 
+    @Override
+    public void onHostResume() {
+        setForeground(true);
+    }
+
+    @Override
+    public void onHostPause() {
+        setForeground(false);
+    }
+
+    @Override
+    public void onHostDestroy() {
+        setForeground(false);
+    }
+
+    private void setForeground(boolean foreground) {
+        this.foreground = foreground;
+
+        if(binder != null) {
+            MusicBinder binder = this.binder;
+            binder.post(() -> binder.setForeground(foreground));
+        }
+    }
+
     @Override
     public void onServiceConnected(ComponentName name, IBinder service) {
         binder = (MusicBinder)service;
         connecting = false;
 
         // Reapply options that user set before with updateOptions
-        if (options != null) {
-            binder.updateOptions(options);
-        }
+        MusicBinder binder = this.binder;
+        Bundle options = this.options;
+        boolean foreground = this.foreground;
+        binder.post(() -> {
+            if(options != null) binder.updateOptions(options);
+            binder.setForeground(foreground);
+        });
 
         // Triggers all callbacks
         while(!initCallbacks.isEmpty()) {
@@ -91,7 +128,11 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
      */
     private void waitForConnection(Runnable r) {
         if(binder != null) {
-            binder.post(r);
+            if(Thread.currentThread() == batchThread) {
+                r.run();
+            } else {
+                binder.post(r);
+            }
             return;
         } else {
             initCallbacks.add(r);
@@ -190,6 +231,125 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
 
     @ReactMethod
     public void add(ReadableArray tracks, final String insertBeforeId, final Promise callback) {
+        waitForConnection(() -> {
+            QueueSnapshot queue = binder.getPlayback().getQueue();
+
+            if(insertBeforeId != null && queue.indexOf(insertBeforeId) == -1) {
+                callback.reject("track_not_in_queue", "Given track ID was not found in queue");
+                return;
+            }
+
+            if(tracks.size() == 0) {
+                callback.reject("invalid_track_object", "Track is missing a required key");
+                return;
+            }
+
+            // Checks the required keys before anything is inserted, so an invalid array never adds only part of its tracks
+            Set<String> ids = new HashSet<>();
+
+            for(int i = 0; i < tracks.size(); i++) {
+                ReadableMap map = tracks.getType(i) == ReadableType.Map ? tracks.getMap(i) : null;
+                String id = map != null && map.hasKey("id") && map.getType("id") == ReadableType.String ? map.getString("id") : null;
+
+                if(id == null || !hasUrl(map)) {
+                    callback.reject("invalid_track_object", "Track is missing a required key");
+                    return;
+                } else if(queue.containsId(id) || !ids.add(id)) {
+                    callback.reject("duplicate_track_id", "The track " + id + " is already in the queue");
+                    return;
+                }
+            }
+
+            addChunk(tracks, 0, insertBeforeId, callback);
+        });
+    }
+
+    private static boolean hasUrl(ReadableMap map) {
+        if(!map.hasKey("url")) return false;
+
+        switch(map.getType("url")) {
+            case String:
+                return !map.getString("url").trim().isEmpty();
+            case Map:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Parses and inserts the next chunk of tracks.
+     * The next chunk is only posted after the previous one is inserted, yielding the player thread between them.
+     */
+    private void addChunk(ReadableArray tracks, int offset, String insertBeforeId, Promise callback) {
+        ExoPlayback playback = binder.getPlayback();
+        int total = tracks.size();
+        int end = Math.min(offset + ADD_CHUNK_SIZE, total);
+        List<Track> trackList = new ArrayList<>(end - offset);
+
+        try {
+            for(int i = offset; i < end; i++) {
+                Bundle bundle = Arguments.toBundle(tracks.getMap(i));
+                trackList.add(new Track(getReactApplicationContext(), bundle, binder.getRatingType()));
+            }
+        } catch(Exception ex) {
+            rollbackAdd(tracks, offset, callback, "invalid_track_object", ex.getMessage());
+            return;
+        }
+
+        // The queue might have changed between chunks
+        QueueSnapshot queue = playback.getQueue();
+        int index = insertBeforeId != null ? queue.indexOf(insertBeforeId) : queue.size();
+        String duplicate = queue.findDuplicateId(trackList);
+
+        if(index == -1) {
+            rollbackAdd(tracks, offset, callback, "track_not_in_queue", "Given track ID was not found in queue");
+            return;
+        } else if(duplicate != null) {
+            rollbackAdd(tracks, offset, callback, "duplicate_track_id", "The track " + duplicate + " is already in the queue");
+            return;
+        }
+
+        playback.add(trackList, index, () -> {
+            if(total > ADD_CHUNK_SIZE) {
+                WritableMap progress = Arguments.createMap();
+                progress.putInt("added", end);
+                progress.putInt("total", total);
+                binder.emit(MusicEvents.PLAYBACK_QUEUE_ADD_PROGRESS, progress);
+            }
+
+            if(end < total) {
+                binder.post(() -> addChunk(tracks, end, insertBeforeId, callback));
+            } else {
+                callback.resolve(null);
+            }
+        });
+    }
+
+    /**
+     * Removes the tracks inserted by the previous chunks before rejecting, so a failed add never leaves part of its tracks.
+     * The current track can't be removed, so it's kept if the player already moved to it.
+     */
+    private void rollbackAdd(ReadableArray tracks, int count, Promise callback, String code, String message) {
+        ExoPlayback playback = binder.getPlayback();
+        QueueSnapshot queue = playback.getQueue();
+        List<Integer> indexes = new ArrayList<>();
+
+        for(int i = 0; i < count; i++) {
+            int index = queue.indexOf(tracks.getMap(i).getString("id"));
+            if(index != -1) indexes.add(index);
+        }
+
+        if(indexes.isEmpty()) {
+            callback.reject(code, message);
+            return;
+        }
+
+        playback.remove(indexes, new PromiseImpl(args -> callback.reject(code, message), args -> callback.reject(code, message)));
+    }
+
+    @ReactMethod
+    public void setQueue(ReadableArray tracks, final Promise callback) {
         final ArrayList bundleList = Arguments.toList(tracks);
 
         waitForConnection(() -> {
@@ -202,29 +362,21 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
                 return;
             }
 
-            List<Track> queue = binder.getPlayback().getQueue();
-            int index = -1;
+            if(trackList == null) {
+                callback.reject("invalid_track_object", "Track is missing a required key");
+                return;
+            }
+
+            Set<String> ids = new HashSet<>();
 
-            if(insertBeforeId != null) {
-                for(int i = 0; i < queue.size(); i++) {
-                    if(queue.get(i).id.equals(insertBeforeId)) {
-                        index = i;
-                        break;
-                    }
+            for(Track track : trackList) {
+                if(!ids.add(track.id)) {
+                    callback.reject("duplicate_track_id", "The track " + track.id + " is duplicated");
+                    return;
                 }
-            } else {
-                index = queue.size();
             }
 
-            if(index == -1) {
-                callback.reject("track_not_in_queue", "Given track ID was not found in queue");
-            } else if(trackList == null || trackList.isEmpty()) {
-                callback.reject("invalid_track_object", "Track is missing a required key");
-            } else if(trackList.size() == 1) {
-                binder.getPlayback().add(trackList.get(0), index, callback);
-            } else {
-                binder.getPlayback().add(trackList, index, callback);
-            }
+            binder.getPlayback().setQueue(trackList, callback);
         });
     }
 
@@ -233,18 +385,12 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
         final ArrayList trackList = Arguments.toList(tracks);
 
         waitForConnection(() -> {
-            List<Track> queue = binder.getPlayback().getQueue();
+            QueueSnapshot queue = binder.getPlayback().getQueue();
             List<Integer> indexes = new ArrayList<>();
 
             for(Object o : trackList) {
-                String id = o.toString();
-
-                for(int i = 0; i < queue.size(); i++) {
-                    if(queue.get(i).id.equals(id)) {
-                        indexes.add(i);
-                        break;
-                    }
-                }
+                int index = queue.indexOf(o.toString());
+                if(index != -1) indexes.add(index);
             }
 
             if (!indexes.isEmpty()) {
@@ -256,25 +402,32 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     }
 
     @ReactMethod
-    public void updateMetadataForTrack(String id, ReadableMap map, final Promise callback) {
+    public void removeRange(final String fromId, final String toId, final Promise callback) {
         waitForConnection(() -> {
-            ExoPlayback playback = binder.getPlayback();
-            List<Track> queue = playback.getQueue();
-            Track track = null;
-            int index = -1;
-
-            for(int i = 0; i < queue.size(); i++) {
-                track = queue.get(i);
+            QueueSnapshot queue = binder.getPlayback().getQueue();
+            int from = queue.indexOf(fromId);
+            int to = queue.indexOf(toId);
 
-                if(track.id.equals(id)) {
-                    index = i;
-                    break;
-                }
+            if(from == -1 || to == -1) {
+                callback.reject("track_not_in_queue", "Given track ID was not found in queue");
+                return;
             }
 
+            binder.getPlayback().removeRange(Math.min(from, to), Math.max(from, to) + 1, callback);
+        });
+    }
+
+    @ReactMethod
+    public void updateMetadataForTrack(String id, ReadableMap map, final Promise callback) {
+        waitForConnection(() -> {
+            ExoPlayback playback = binder.getPlayback();
+            QueueSnapshot queue = playback.getQueue();
+            int index = queue.indexOf(id);
+
             if(index == -1) {
                 callback.reject("track_not_in_queue", "No track found");
             } else {
+                Track track = queue.get(index);
                 track.setMetadata(getReactApplicationContext(), Arguments.toBundle(map), binder.getRatingType());
                 playback.updateTrack(index, track);
                 callback.resolve(null);
@@ -375,31 +528,21 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     @ReactMethod
     public void getTrack(final String id, final Promise callback) {
         waitForConnection(() -> {
-            List<Track> tracks = binder.getPlayback().getQueue();
+            Track track = binder.getPlayback().getQueue().getById(id);
 
-            for(Track track : tracks) {
-                if(track.id.equals(id)) {
-                    callback.resolve(Arguments.fromBundle(track.originalItem));
-                    return;
-                }
-            }
-
-            callback.resolve(null);
+            callback.resolve(track == null ? null : Arguments.fromBundle(track.getOriginalItem()));
         });
     }
 
     @ReactMethod
-    public void getQueue(Promise callback) {
-        waitForConnection(() -> {
-            List queue = new ArrayList();
-            List<Track> tracks = binder.getPlayback().getQueue();
-
-            for(Track track : tracks) {
-                queue.add(track.originalItem);
-            }
+    public void getQueue(final int offset, final int limit, Promise callback) {
+        // The queue is sent as a JSON string, which is cached and much cheaper to send than a WritableArray
+        waitForConnection(() -> callback.resolve(binder.getPlayback().getQueue().toJson(offset, limit)));
+    }
 
-            callback.resolve(Arguments.fromList(queue));
-        });
+    @ReactMethod
+    public void getQueueVersion(Promise callback) {
+        waitForConnection(() -> callback.resolve((double)binder.getPlayback().getQueue().getVersion()));
     }
 
     @ReactMethod
@@ -458,4 +601,376 @@ public class MusicModule extends ReactContextBaseJavaModule implements ServiceCo
     public void getState(final Promise callback) {
         waitForConnection(() -> callback.resolve(binder.getPlayback().getState()));
     }
+
+    /**
+     * Returns the playback state synchronously, from the last snapshot published by the player thread
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public WritableMap getPlaybackSnapshot() {
+        MusicBinder binder = this.binder;
+        if(binder == null) return null;
+
+        PlaybackSnapshot snapshot = binder.getSnapshot();
+        long position = snapshot.getPosition();
+
+        WritableMap map = Arguments.createMap();
+        map.putInt("state", snapshot.state);
+        map.putString("track", snapshot.trackId);
+        map.putDouble("position", Utils.toSeconds(position == C.POSITION_UNSET ? 0 : position));
+        map.putDouble("bufferedPosition", Utils.toSeconds(snapshot.bufferedPosition == C.POSITION_UNSET ? 0 : snapshot.bufferedPosition));
+        map.putDouble("duration", Utils.toSeconds(snapshot.duration == C.TIME_UNSET ? 0 : snapshot.duration));
+        map.putDouble("rate", snapshot.rate);
+        map.putDouble("volume", snapshot.volume);
+        return map;
+    }
+
+    /**
+     * Runs a list of commands in order in the player thread, returning one result for each of them.
+     * The metadata and notification changes made by the commands are published only once, after the last one.
+     */
+    @ReactMethod
+    public void executeBatch(ReadableArray commands, final Promise callback) {
+        waitForConnection(() -> new Batch(commands, callback).run());
+    }
+
+    private void executeCommand(ReadableMap command, Promise promise) {
+        String name = command.getString("command");
+        ReadableArray args = command.hasKey("args") && !command.isNull("args") ? command.getArray("args") : null;
+
+        if(name == null) name = "";
+
+        switch(name) {
+            case "add":
+                add(args.getArray(0), getString(args, 1), promise);
+                break;
+            case "setQueue":
+                setQueue(args.getArray(0), promise);
+                break;
+            case "remove":
+                remove(args.getArray(0), promise);
+                break;
+            case "removeRange":
+                removeRange(args.getString(0), args.getString(1), promise);
+                break;
+            case "updateMetadataForTrack":
+                updateMetadataForTrack(args.getString(0), args.getMap(1), promise);
+                break;
+            case "removeUpcomingTracks":
+                removeUpcomingTracks(promise);
+                break;
+            case "skip":
+                skip(args.getString(0), promise);
+                break;
+            case "skipToNext":
+                skipToNext(promise);
+                break;
+            case "skipToPrevious":
+                skipToPrevious(promise);
+                break;
+            case "reset":
+                reset(promise);
+                break;
+            case "play":
+                play(promise);
+                break;
+            case "pause":
+                pause(promise);
+                break;
+            case "stop":
+                stop(promise);
+                break;
+            case "seekTo":
+                seekTo((float)args.getDouble(0), promise);
+                break;
+            case "setVolume":
+                setVolume((float)args.getDouble(0), promise);
+                break;
+            case "setRate":
+                setRate((float)args.getDouble(0), promise);
+                break;
+            case "getTrack":
+                getTrack(args.getString(0), promise);
+                break;
+            case "getCurrentTrack":
+                getCurrentTrack(promise);
+                break;
+            case "getVolume":
+                getVolume(promise);
+                break;
+            case "getRate":
+                getRate(promise);
+                break;
+            case "getDuration":
+                getDuration(promise);
+                break;
+            case "getBufferedPosition":
+                getBufferedPosition(promise);
+                break;
+            case "getPosition":
+                getPosition(promise);
+                break;
+            case "getState":
+                getState(promise);
+                break;
+            default:
+                promise.reject("invalid_command", "The command " + name + " can't be batched");
+        }
+    }
+
+    private static String getString(ReadableArray args, int index) {
+        return args != null && args.size() > index && !args.isNull(index) ? args.getString(index) : null;
+    }
+
+    /**
+     * Runs the commands of a batch one after the other.
+     * Commands that finish right away run in the same player thread task,
+     * while the next command waits for the ones that finish later, such as add.
+     *
+     * The metadata updates are held until the last command finishes, including the ones that finish later.
+     * If a command takes longer than {@link #BATCH_TIMEOUT_MS}, the updates are published anyway,
+     * so a command that never finishes can't hold them forever.
+     */
+    private final class Batch {
+
+        private final ReadableArray commands;
+        private final Promise callback;
+        private final WritableArray results = Arguments.createArray();
+        private final Runnable timeout = this::release;
+        private int index = 0;
+        private boolean running = false;
+        private boolean holding = false;
+
+        Batch(ReadableArray commands, Promise callback) {
+            this.commands = commands;
+            this.callback = callback;
+        }
+
+        void run() {
+            MusicBinder binder = MusicModule.this.binder;
+
+            if(binder == null) {
+                // The player was destroyed while a command was running
+                callback.reject("unknown", "The player was destroyed");
+                return;
+            }
+
+            running = true;
+            binder.removeCallbacks(timeout);
+
+            if(!holding) {
+                holding = true;
+                binder.beginBatch();
+            }
+
+            while(index < commands.size()) {
+                int current = index;
+                Promise promise = new PromiseImpl(
+                        args -> onResolve(current, args.length > 0 ? args[0] : null),
+                        args -> onReject(current, args.length > 0 ? args[0] : null));
+
+                batchThread = Thread.currentThread();
+
+                try {
+                    executeCommand(commands.getMap(current), promise);
+                } catch(Exception ex) {
+                    promise.reject("invalid_command", ex);
+                } finally {
+                    batchThread = null;
+                }
+
+                if(index == current) {
+                    // The command will finish later, which will resume the batch
+                    running = false;
+                    binder.postDelayed(timeout, BATCH_TIMEOUT_MS);
+                    return;
+                }
+            }
+
+            running = false;
+            release();
+            callback.resolve(results);
+        }
+
+        /**
+         * Publishes the held metadata updates
+         */
+        private void release() {
+            if(!holding) return;
+            holding = false;
+
+            MusicBinder binder = MusicModule.this.binder;
+            if(binder != null) binder.endBatch();
+        }
+
+        private void onResolve(int command, Object value) {
+            WritableMap result = Arguments.createMap();
+            putValue(result, "result", value);
+            next(command, result);
+        }
+
+        private void onReject(int command, Object info) {
+            ReadableMap map = info instanceof ReadableMap ? (ReadableMap)info : null;
+            WritableMap error = Arguments.createMap();
+            error.putString("code", map != null && map.hasKey("code") ? map.getString("code") : "unknown");
+            error.putString("message", map != null && map.hasKey("message") ? map.getString("message") : null);
+
+            WritableMap result = Arguments.createMap();
+            result.putMap("error", error);
+            next(command, result);
+        }
+
+        private void next(int command, WritableMap result) {
+            // Ignores commands that were already settled
+            if(command != index) return;
+
+            results.pushMap(result);
+            index++;
+
+            if(!running) run();
+        }
+
+    }
+
+    private static void putValue(WritableMap map, String key, Object value) {
+        if(value == null) {
+            map.putNull(key);
+        } else if(value instanceof Boolean) {
+            map.putBoolean(key, (Boolean)value);
+        } else if(value instanceof Number) {
+            map.putDouble(key, ((Number)value).doubleValue());
+        } else if(value instanceof WritableMap) {
+            map.putMap(key, (WritableMap)value);
+        } else if(value instanceof WritableArray) {
+            map.putArray(key, (WritableArray)value);
+        } else {
+            map.putString(key, value.toString());
+        }
+    }
+
+    @ReactMethod
+    public void getCacheInfo(final Promise callback) {
+        waitForConnection(() -> {
+            CacheManager cache = getCacheManager(callback);
+            if(cache != null) cache.getInfo(callback);
+        });
+    }
+
+    @ReactMethod
+    public void getCachedProgress(final String id, final Promise callback) {
+        waitForConnection(() -> {
+            CacheManager cache = getCacheManager(callback);
+            Track track = cache == null ? null : getTrackInQueue(id, callback);
+            if(track != null) cache.getCachedProgress(track, callback);
+        });
+    }
+
+    @ReactMethod
+    public void pinTrack(final String id, final Promise callback) {
+        waitForConnection(() -> {
+            CacheManager cache = getCacheManager(callback);
+            Track track = cache == null ? null : getTrackInQueue(id, callback);
+            if(track != null) cache.pin(track, callback);
+        });
+    }
+
+    @ReactMethod
+    public void unpinTrack(final String id, final Promise callback) {
+        waitForConnection(() -> {
+            CacheManager cache = getCacheManager(callback);
+            Track track = cache == null ? null : getTrackInQueue(id, callback);
+            if(track != null) cache.unpin(track, callback);
+        });
+    }
+
+    @ReactMethod
+    public void evictTrack(final String id, final Promise callback) {
+        waitForConnection(() -> {
+            CacheManager cache = getCacheManager(callback);
+            Track track = cache == null ? null : getTrackInQueue(id, callback);
+            if(track != null) cache.evict(track, callback);
+        });
+    }
+
+    @ReactMethod
+    public void clearCache(final Promise callback) {
+        waitForConnection(() -> {
+            CacheManager cache = getCacheManager(callback);
+            if(cache != null) cache.clear(callback);
+        });
+    }
+
+    /**
+     * Gets the cache manager, rejecting the promise if caching is disabled
+     */
+    private CacheManager getCacheManager(Promise callback) {
+        CacheManager cache = binder.getCacheManager();
+        if(cache == null) callback.reject("cache_disabled", "The cache is disabled, set maxCacheSize to enable it");
+        return cache;
+    }
+
+    /**
+     * Gets a track from the queue, rejecting the promise if it's not found
+     */
+    private Track getTrackInQueue(String id, Promise callback) {
+        Track track = binder.getPlayback().getQueue().getById(id);
+        if(track == null) callback.reject("track_not_in_queue", "No track found");
+        return track;
+    }
+
+    @ReactMethod
+    public void download(ReadableArray tracks, final Promise callback) {
+        final ArrayList bundleList = Arguments.toList(tracks);
+
+        waitForConnection(() -> {
+            DownloadTracker downloads = getDownloads(callback);
+            if(downloads == null) return;
+
+            List<Track> trackList;
+
+            try {
+                trackList = Track.createTracks(getReactApplicationContext(), bundleList, binder.getRatingType());
+            } catch(Exception ex) {
+                callback.reject("invalid_track_object", ex);
+                return;
+            }
+
+            if(trackList == null || trackList.isEmpty()) {
+                callback.reject("invalid_track_object", "Track is missing a required key");
+                return;
+            }
+
+            binder.download(downloads, trackList);
+            callback.resolve(null);
+        });
+    }
+
+    @ReactMethod
+    public void removeDownload(final String id, final Promise callback) {
+        waitForConnection(() -> {
+            DownloadTracker downloads = getDownloads(callback);
+            if(downloads == null) return;
+
+            downloads.remove(id);
+            callback.resolve(null);
+        });
+    }
+
+    @ReactMethod
+    public void getDownloads(final Promise callback) {
+        waitForConnection(() -> {
+            DownloadTracker downloads = getDownloads(callback);
+            if(downloads == null) return;
+
+            downloads.getDownloads(callback);
+        });
+    }
+
+    /**
+     * Gets the download tracker, rejecting the promise if downloads are disabled
+     */
+    private DownloadTracker getDownloads(Promise callback) {
+        DownloadTracker downloads = binder.getDownloads();
+        if(downloads == null) callback.reject("downloads_disabled", "The downloads are disabled, set enableDownloads to enable them");
+        return downloads;
+    }
 }
@@ -3,7 +3,14 @@ package com.guichaguri.trackplayer.service;
 import android.os.Binder;
 import android.os.Bundle;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
+import com.guichaguri.trackplayer.service.models.PlaybackSnapshot;
+import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.player.CacheManager;
+import com.guichaguri.trackplayer.service.player.DownloadTracker;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
+import com.guichaguri.trackplayer.service.player.LocalPlayback;
+import java.util.List;
 
 /**
  * @author Guichaguri
@@ -22,6 +29,18 @@ public class MusicBinder extends Binder {
         service.handler.post(r);
     }
 
+    public void postDelayed(Runnable r, long delay) {
+        service.handler.postDelayed(r, delay);
+    }
+
+    public void removeCallbacks(Runnable r) {
+        service.handler.removeCallbacks(r);
+    }
+
+    public void emit(String event, WritableMap data) {
+        service.emit(event, data);
+    }
+
     public ExoPlayback getPlayback() {
         ExoPlayback playback = manager.getPlayback();
 
@@ -34,17 +53,73 @@ public class MusicBinder extends Binder {
         return playback;
     }
 
+    /**
+     * Gets the last published playback state, which doesn't need to be called in the player thread
+     */
+    public PlaybackSnapshot getSnapshot() {
+        return manager.getSnapshot();
+    }
+
     public void setupPlayer(Bundle bundle, Promise promise) {
+        manager.setPersistQueue(bundle.getBoolean("persistQueue", false));
+        if(bundle.getBoolean("enableDownloads", false)) {
+            manager.enableDownloads(Utils.getInt(bundle, "maxParallelDownloads", 3));
+        }
         manager.switchPlayback(manager.createLocalPlayback(bundle));
-        promise.resolve(null);
+        manager.restoreQueue(() -> promise.resolve(null));
+    }
+
+    /**
+     * Gets the cache manager of the current playback
+     * @return The cache manager or null if caching is disabled
+     */
+    public CacheManager getCacheManager() {
+        ExoPlayback playback = manager.getPlayback();
+        return playback instanceof LocalPlayback ? ((LocalPlayback)playback).getCacheManager() : null;
+    }
+
+    /**
+     * Gets the download tracker
+     * @return The tracker or null if downloads are disabled
+     */
+    public DownloadTracker getDownloads() {
+        return manager.getDownloads();
+    }
+
+    /**
+     * Starts downloading tracks with the same cache key used by the current playback
+     */
+    public void download(DownloadTracker downloads, List<Track> tracks) {
+        ExoPlayback playback = getPlayback();
+
+        for(Track track : tracks) {
+            String key = playback instanceof LocalPlayback ? ((LocalPlayback)playback).getCacheKey(track) : null;
+            downloads.download(track, key);
+        }
     }
 
     public void updateOptions(Bundle bundle) {
         manager.setStopWithApp(bundle.getBoolean("stopWithApp", false));
         manager.setAlwaysPauseOnInterruption(bundle.getBoolean("alwaysPauseOnInterruption", false));
+        manager.setProgressInterval(Utils.toMillis(bundle.getDouble("progressUpdateInterval", 1)));
         manager.getMetadata().updateOptions(bundle);
     }
 
+    public void setForeground(boolean foreground) {
+        manager.setForeground(foreground);
+    }
+
+    /**
+     * Holds the metadata and notification updates until {@link #endBatch()}
+     */
+    public void beginBatch() {
+        manager.getMetadata().beginBatch();
+    }
+
+    public void endBatch() {
+        manager.getMetadata().endBatch();
+    }
+
     public int getRatingType() {
         return manager.getMetadata().getRatingType();
     }
@@ -18,6 +18,10 @@ import android.os.PowerManager;
 import android.os.PowerManager.WakeLock;
 import androidx.annotation.RequiresApi;
 import android.util.Log;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.network.OkHttpClientProvider;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.DefaultLoadControl;
 import com.google.android.exoplayer2.DefaultRenderersFactory;
@@ -27,9 +31,20 @@ import com.google.android.exoplayer2.SimpleExoPlayer;
 import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
 import com.guichaguri.trackplayer.module.MusicEvents;
 import com.guichaguri.trackplayer.service.metadata.MetadataManager;
+import com.guichaguri.trackplayer.service.models.PlaybackSnapshot;
 import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.player.CacheManager;
+import com.guichaguri.trackplayer.service.player.DownloadTracker;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
 import com.guichaguri.trackplayer.service.player.LocalPlayback;
+import com.guichaguri.trackplayer.service.player.QueueStore;
+import com.guichaguri.trackplayer.service.player.QueueStore.RestoreCallback;
+import com.guichaguri.trackplayer.service.player.ScoredCacheEvictor;
+import com.guichaguri.trackplayer.service.player.TrackCacheKeyFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import okhttp3.Call;
 
 import static com.google.android.exoplayer2.DefaultLoadControl.*;
 
@@ -45,6 +60,9 @@ public class MusicManager implements OnAudioFocusChangeListener {
 
     private MetadataManager metadata;
     private ExoPlayback playback;
+    private QueueStore store;
+    private DownloadTracker downloads;
+    private final DownloadTracker.Listener downloadListener = download -> service.emit(MusicEvents.DOWNLOAD_CHANGED, Arguments.fromBundle(download));
 
     @RequiresApi(26)
     private AudioFocusRequest focus = null;
@@ -62,6 +80,16 @@ public class MusicManager implements OnAudioFocusChangeListener {
     private boolean stopWithApp = false;
     private boolean alwaysPauseOnInterruption = false;
 
+    private final AtomicReference<PlaybackSnapshot> snapshot = new AtomicReference<>(PlaybackSnapshot.EMPTY);
+
+    private final Runnable progressUpdate = this::emitProgress;
+    private long progressInterval = 1000;
+    private boolean inForeground = true;
+
+    // The position is saved periodically while playing, so it's restored close to where it was if the process is killed
+    private static final long CHECKPOINT_INTERVAL_MS = 5000;
+    private final Runnable periodicCheckpoint = this::checkpoint;
+
     @SuppressLint("InvalidWakeLockTag")
     public MusicManager(MusicService service) {
         this.service = service;
@@ -81,6 +109,21 @@ public class MusicManager implements OnAudioFocusChangeListener {
         return playback;
     }
 
+    /**
+     * Gets the last playback state published by the player thread, which can be called from any thread
+     * @return The snapshot
+     */
+    public PlaybackSnapshot getSnapshot() {
+        return snapshot.get();
+    }
+
+    /**
+     * Publishes a new snapshot of the playback state, which has to be called in the player thread
+     */
+    public void updateSnapshot() {
+        snapshot.set(playback != null ? PlaybackSnapshot.of(playback) : PlaybackSnapshot.EMPTY);
+    }
+
     public boolean shouldStopWithApp() {
         return stopWithApp;
     }
@@ -93,6 +136,28 @@ public class MusicManager implements OnAudioFocusChangeListener {
         this.alwaysPauseOnInterruption = alwaysPauseOnInterruption;
     }
 
+    /**
+     * Sets how often the progress event is sent while playing
+     * @param interval The interval in milliseconds, or 0 to disable it
+     */
+    public void setProgressInterval(long interval) {
+        this.progressInterval = interval;
+        scheduleProgress();
+    }
+
+    /**
+     * Pauses the progress events while the app is in background, as there is no UI to update
+     * @param foreground Whether the app is in foreground
+     */
+    public void setForeground(boolean foreground) {
+        if(inForeground == foreground) return;
+        this.inForeground = foreground;
+
+        // Updates the UI right away, as the progress events were paused in the background
+        if(foreground) emitProgress();
+        else scheduleProgress();
+    }
+
     public MetadataManager getMetadata() {
         return metadata;
     }
@@ -101,6 +166,72 @@ public class MusicManager implements OnAudioFocusChangeListener {
         return service.handler;
     }
 
+    /**
+     * Enables or disables the queue persistence
+     * @param persist Whether the queue should be saved to the disk
+     */
+    public void setPersistQueue(boolean persist) {
+        if(persist && store == null) {
+            store = new QueueStore(service);
+        } else if(!persist && store != null) {
+            store.clear();
+            store.destroy();
+            store = null;
+        } else if(!persist) {
+            // Deletes the queue saved in a previous session, so it's not restored once the persistence is enabled again
+            QueueStore.delete(service);
+        }
+    }
+
+    /**
+     * Enables the downloads. They can't be disabled again, as the tracker is shared with the whole process.
+     * @param maxParallelDownloads The maximum amount of tracks downloaded at the same time
+     */
+    public void enableDownloads(int maxParallelDownloads) {
+        if(downloads == null) {
+            downloads = DownloadTracker.getInstance(service);
+            downloads.addListener(downloadListener);
+        }
+
+        downloads.setMaxParallelDownloads(maxParallelDownloads);
+    }
+
+    /**
+     * Gets the download tracker
+     * @return The tracker or null if downloads weren't enabled
+     */
+    public DownloadTracker getDownloads() {
+        return downloads;
+    }
+
+    /**
+     * Restores the persisted queue, if the persistence is enabled
+     * @param callback Called in the service thread after the queue is restored
+     */
+    public void restoreQueue(Runnable callback) {
+        if(store == null) {
+            callback.run();
+            return;
+        }
+
+        RestoreCallback restored = (tracks, index, position, rate) -> getHandler().post(() -> {
+            if(playback == null || tracks.isEmpty() || !playback.getQueue().isEmpty()) {
+                callback.run();
+                return;
+            }
+
+            playback.add(tracks, 0, () -> {
+                if(index > 0 || position > 0) {
+                    playback.seekTo(Math.min(Math.max(index, 0), tracks.size() - 1), Math.max(position, 0));
+                }
+                playback.setRate(rate);
+                callback.run();
+            });
+        });
+
+        store.restore(service, metadata.getRatingType(), restored);
+    }
+
     public void switchPlayback(ExoPlayback playback) {
         if(this.playback != null) {
             this.playback.stop();
@@ -112,6 +243,8 @@ public class MusicManager implements OnAudioFocusChangeListener {
         if(this.playback != null) {
             this.playback.initialize();
         }
+
+        updateSnapshot();
     }
 
     public LocalPlayback createLocalPlayback(Bundle options) {
@@ -120,6 +253,13 @@ public class MusicManager implements OnAudioFocusChangeListener {
         int playBuffer = (int)Utils.toMillis(options.getDouble("playBuffer", Utils.toSeconds(DEFAULT_BUFFER_FOR_PLAYBACK_MS)));
         int backBuffer = (int)Utils.toMillis(options.getDouble("backBuffer", Utils.toSeconds(DEFAULT_BACK_BUFFER_DURATION_MS)));
         long cacheMaxSize = (long)(options.getDouble("maxCacheSize", 0) * 1024);
+        int lazyLoadWindow = Utils.getInt(options, "lazyLoadWindow", 0);
+        String httpStack = options.getString("httpStack", "default");
+        int prefetchCount = Utils.getInt(options, "prefetchCount", 0);
+        long prefetchSize = (long)(options.getDouble("prefetchSize", 512) * 1024);
+        long memoryCacheSize = (long)(options.getDouble("memoryCacheSize", 0) * 1024);
+        String cachePolicy = options.getString("cachePolicy", CacheManager.POLICY_SCORED);
+        List<String> ignoredParams = options.getStringArrayList("cacheKeyIgnoredParams");
         int multiplier = DEFAULT_BUFFER_FOR_PLAYBACK_AFTER_REBUFFER_MS / DEFAULT_BUFFER_FOR_PLAYBACK_MS;
 
         LoadControl control = new DefaultLoadControl.Builder()
@@ -132,7 +272,15 @@ public class MusicManager implements OnAudioFocusChangeListener {
         player.setAudioAttributes(new com.google.android.exoplayer2.audio.AudioAttributes.Builder()
                 .setContentType(C.CONTENT_TYPE_MUSIC).setUsage(C.USAGE_MEDIA).build());
 
-        return new LocalPlayback(service, this, player, cacheMaxSize);
+        // Shares the connection pool with React Native's networking
+        Call.Factory httpClient = "okhttp".equals(httpStack) ? OkHttpClientProvider.getOkHttpClient() : null;
+
+        // Ignores the query parameters that change every time the URL is signed
+        TrackCacheKeyFactory cacheKeyFactory = new TrackCacheKeyFactory(
+                ignoredParams != null ? ignoredParams : Collections.emptyList());
+
+        return new LocalPlayback(service, this, player, cacheMaxSize, lazyLoadWindow, httpClient,
+                prefetchCount, prefetchSize, cacheKeyFactory, downloads, memoryCacheSize, cachePolicy);
     }
 
     @SuppressLint("WakelockTimeout")
@@ -198,22 +346,42 @@ public class MusicManager implements OnAudioFocusChangeListener {
     public void onStateChange(int state) {
         Log.d(Utils.LOG, "onStateChange");
 
-        Bundle bundle = new Bundle();
-        bundle.putInt("state", state);
-        service.emit(MusicEvents.PLAYBACK_STATE, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putInt("state", state);
+        updateSnapshot();
+        service.emit(MusicEvents.PLAYBACK_STATE, data);
         metadata.updatePlayback(playback);
+        emitProgress();
+        checkpoint();
     }
 
     public void onTrackUpdate(Track previous, long prevPos, Track next) {
         Log.d(Utils.LOG, "onTrackUpdate");
 
+        updateSnapshot();
+
         if(next != null) metadata.updateMetadata(next);
 
-        Bundle bundle = new Bundle();
-        bundle.putString("track", previous != null ? previous.id : null);
-        bundle.putDouble("position", Utils.toSeconds(prevPos));
-        bundle.putString("nextTrack", next != null ? next.id : null);
-        service.emit(MusicEvents.PLAYBACK_TRACK_CHANGED, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putString("track", previous != null ? previous.id : null);
+        data.putDouble("position", Utils.toSeconds(prevPos));
+        data.putString("nextTrack", next != null ? next.id : null);
+        service.emit(MusicEvents.PLAYBACK_TRACK_CHANGED, data);
+        metadata.updateQueue();
+        emitProgress();
+        checkpoint();
+    }
+
+    public void onQueueUpdate() {
+        updateSnapshot();
+        metadata.updateQueue();
+        checkpoint();
+    }
+
+    public void onSeek() {
+        updateSnapshot();
+        emitProgress();
+        checkpoint();
     }
 
     public void onReset() {
@@ -223,38 +391,112 @@ public class MusicManager implements OnAudioFocusChangeListener {
     public void onEnd(Track previous, long prevPos) {
         Log.d(Utils.LOG, "onEnd");
 
-        Bundle bundle = new Bundle();
-        bundle.putString("track", previous != null ? previous.id : null);
-        bundle.putDouble("position", Utils.toSeconds(prevPos));
-        service.emit(MusicEvents.PLAYBACK_QUEUE_ENDED, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putString("track", previous != null ? previous.id : null);
+        data.putDouble("position", Utils.toSeconds(prevPos));
+        service.emit(MusicEvents.PLAYBACK_QUEUE_ENDED, data);
     }
 
     public void onMetadataReceived(String source, String title, String url, String artist, String album, String date, String genre) {
         Log.d(Utils.LOG, "onMetadataReceived: " + source);
 
-        Bundle bundle = new Bundle();
-        bundle.putString("source", source);
-        bundle.putString("title", title);
-        bundle.putString("url", url);
-        bundle.putString("artist", artist);
-        bundle.putString("album", album);
-        bundle.putString("date", date);
-        bundle.putString("genre", genre);
-        service.emit(MusicEvents.PLAYBACK_METADATA, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putString("source", source);
+        data.putString("title", title);
+        data.putString("url", url);
+        data.putString("artist", artist);
+        data.putString("album", album);
+        data.putString("date", date);
+        data.putString("genre", genre);
+        service.emit(MusicEvents.PLAYBACK_METADATA, data);
+    }
+
+    public void onCacheEviction(long budget, long size, List<ScoredCacheEvictor.Eviction> evicted) {
+        WritableArray tracks = Arguments.createArray();
+
+        for(ScoredCacheEvictor.Eviction eviction : evicted) {
+            WritableMap track = Arguments.createMap();
+            track.putString("key", eviction.key);
+            track.putDouble("bytes", eviction.bytes);
+            track.putDouble("score", eviction.score);
+            tracks.pushMap(track);
+        }
+
+        WritableMap data = Arguments.createMap();
+        data.putDouble("budget", budget);
+        data.putDouble("used", size);
+        data.putArray("evicted", tracks);
+        service.emit(MusicEvents.CACHE_EVICTION, data);
     }
 
     public void onError(String code, String error) {
         Log.d(Utils.LOG, "onError");
         Log.e(Utils.LOG, "Playback error: " + code + " - " + error);
 
-        Bundle bundle = new Bundle();
-        bundle.putString("code", code);
-        bundle.putString("message", error);
-        service.emit(MusicEvents.PLAYBACK_ERROR, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putString("code", code);
+        data.putString("message", error);
+        service.emit(MusicEvents.PLAYBACK_ERROR, data);
+    }
+
+    private boolean shouldEmitProgress() {
+        return progressInterval > 0 && inForeground && playback != null;
+    }
+
+    private void scheduleProgress() {
+        Handler handler = getHandler();
+        if(handler == null) return;
+
+        handler.removeCallbacks(progressUpdate);
+
+        // Only keeps sending updates while the position is moving
+        if(shouldEmitProgress() && Utils.isPlaying(playback.getState())) {
+            handler.postDelayed(progressUpdate, progressInterval);
+        }
+    }
+
+    private void emitProgress() {
+        if(!shouldEmitProgress()) {
+            scheduleProgress();
+            return;
+        }
+
+        // Keeps the buffered position of the snapshot fresh
+        updateSnapshot();
+
+        long position = playback.getPosition();
+        long bufferedPosition = playback.getBufferedPosition();
+        long duration = playback.getDuration();
+
+        WritableMap data = Arguments.createMap();
+        data.putDouble("position", Utils.toSeconds(position == C.POSITION_UNSET ? 0 : position));
+        data.putDouble("bufferedPosition", Utils.toSeconds(bufferedPosition == C.POSITION_UNSET ? 0 : bufferedPosition));
+        data.putDouble("duration", Utils.toSeconds(duration == C.TIME_UNSET ? 0 : duration));
+        service.emit(MusicEvents.PLAYBACK_PROGRESS, data);
+
+        scheduleProgress();
+    }
+
+    private void checkpoint() {
+        Handler handler = getHandler();
+        if(handler != null) handler.removeCallbacks(periodicCheckpoint);
+
+        if(store == null || playback == null) return;
+        store.save(playback.getQueue(), playback.getCurrentIndex(), playback.getPosition(), playback.getRate());
+
+        if(handler != null && Utils.isPlaying(playback.getState())) {
+            handler.postDelayed(periodicCheckpoint, CHECKPOINT_INTERVAL_MS);
+        }
     }
 
     @Override
     public void onAudioFocusChange(int focus) {
+        // The focus changes are received in the main thread, but the player can only be used in its own thread
+        Handler handler = getHandler();
+        if(handler != null) handler.post(() -> onFocusChange(focus));
+    }
+
+    private void onFocusChange(int focus) {
         Log.d(Utils.LOG, "onDuck");
 
         boolean permanent = false;
@@ -278,6 +520,8 @@ public class MusicManager implements OnAudioFocusChangeListener {
                 break;
         }
 
+        if(playback == null) return;
+
         if (ducking) {
             playback.setVolumeMultiplier(0.5F);
             wasDucking = true;
@@ -286,10 +530,10 @@ public class MusicManager implements OnAudioFocusChangeListener {
             wasDucking = false;
         }
 
-        Bundle bundle = new Bundle();
-        bundle.putBoolean("permanent", permanent);
-        bundle.putBoolean("paused", paused);
-        service.emit(MusicEvents.BUTTON_DUCK, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putBoolean("permanent", permanent);
+        data.putBoolean("paused", paused);
+        service.emit(MusicEvents.BUTTON_DUCK, data);
     }
 
     private void requestFocus() {
@@ -339,6 +583,10 @@ public class MusicManager implements OnAudioFocusChangeListener {
         hasAudioFocus = r != AudioManager.AUDIOFOCUS_REQUEST_GRANTED;
     }
 
+    public void onTrimMemory(int level) {
+        if(playback instanceof LocalPlayback) ((LocalPlayback)playback).onTrimMemory(level);
+    }
+
     public void destroy() {
         Log.d(Utils.LOG, "Releasing service resources...");
 
@@ -353,6 +601,20 @@ public class MusicManager implements OnAudioFocusChangeListener {
 
         // Release the playback resources
         if(playback != null) playback.destroy();
+        snapshot.set(PlaybackSnapshot.EMPTY);
+
+        // Stop sending the progress
+        Handler handler = getHandler();
+        if(handler != null) {
+            handler.removeCallbacks(progressUpdate);
+            handler.removeCallbacks(periodicCheckpoint);
+        }
+
+        // Stop saving the queue
+        if(store != null) store.destroy();
+
+        // Stop listening to the downloads, which continue for as long as the process lives
+        if(downloads != null) downloads.removeListener(downloadListener);
 
         // Release the metadata resources
         metadata.destroy();
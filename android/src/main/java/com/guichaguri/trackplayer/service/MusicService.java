@@ -3,18 +3,20 @@ package com.guichaguri.trackplayer.service;
 import android.content.Context;
 import android.content.Intent;
 import android.os.Build;
-import android.os.Bundle;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Process;
 import androidx.core.app.NotificationCompat;
-import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 import androidx.media.session.MediaButtonReceiver;
 
 import com.facebook.react.HeadlessJsTaskService;
 import com.facebook.react.ReactInstanceManager;
 import com.facebook.react.bridge.Arguments;
 import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.jstasks.HeadlessJsTaskConfig;
+import com.guichaguri.trackplayer.module.MusicEvents;
 import com.guichaguri.trackplayer.service.Utils;
 import javax.annotation.Nullable;
 
@@ -24,6 +26,7 @@ import javax.annotation.Nullable;
 public class MusicService extends HeadlessJsTaskService {
 
     MusicManager manager;
+    HandlerThread playerThread;
     Handler handler;
 
     @Nullable
@@ -37,25 +40,43 @@ public class MusicService extends HeadlessJsTaskService {
         // Overridden to prevent the service from being terminated
     }
 
-    public void emit(String event, Bundle data) {
-        Intent intent = new Intent(Utils.EVENT_INTENT);
-
-        intent.putExtra("event", event);
-        if(data != null) intent.putExtra("data", data);
-
-        LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
+    public void emit(String event, WritableMap data) {
+        MusicEvents.emit(event, data);
     }
 
     public void destroy() {
-        if(handler != null) {
-            handler.removeMessages(0);
-            handler = null;
-        }
+        MusicManager manager = this.manager;
+        Handler handler = this.handler;
+        HandlerThread thread = this.playerThread;
 
-        if(manager != null) {
-            manager.destroy();
-            manager = null;
+        this.manager = null;
+        this.handler = null;
+        this.playerThread = null;
+
+        if(handler == null) {
+            if(manager != null) manager.destroy();
+            return;
         }
+
+        handler.removeCallbacksAndMessages(null);
+
+        // The player has to be released in its own thread, which is stopped right after
+        handler.post(() -> {
+            if(manager != null) manager.destroy();
+            thread.quit();
+        });
+    }
+
+    /**
+     * Starts the thread the player and the commands run in, if it's not running yet
+     */
+    void startPlayerThread() {
+        if(playerThread != null) return;
+
+        // The player runs in its own thread, keeping the main thread free for the UI
+        playerThread = new HandlerThread("TrackPlayer", Process.THREAD_PRIORITY_AUDIO);
+        playerThread.start();
+        handler = new Handler(playerThread.getLooper());
     }
 
     private void onStartForeground() {
@@ -105,8 +126,9 @@ public class MusicService extends HeadlessJsTaskService {
             return START_NOT_STICKY;
         }
 
+        startPlayerThread();
+
         manager = new MusicManager(this);
-        handler = new Handler();
 
         super.onStartCommand(intent, flags, startId);
         return START_NOT_STICKY;
@@ -119,6 +141,20 @@ public class MusicService extends HeadlessJsTaskService {
         destroy();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+
+        if(manager != null) manager.onTrimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        super.onLowMemory();
+
+        if(manager != null) manager.onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
     @Override
     public void onTaskRemoved(Intent rootIntent) {
         super.onTaskRemoved(rootIntent);
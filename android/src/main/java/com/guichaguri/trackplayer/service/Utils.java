@@ -11,15 +11,22 @@ import android.os.Bundle;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.PlaybackStateCompat;
 import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableMap;
 import com.facebook.react.views.imagehelper.ResourceDrawableIdHelper;
 import com.google.android.exoplayer2.upstream.RawResourceDataSource;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * @author Guichaguri
  */
 public class Utils {
 
-    public static final String EVENT_INTENT = "com.guichaguri.trackplayer.event";
     public static final String CONNECT_INTENT = "com.guichaguri.trackplayer.connect";
     public static final String NOTIFICATION_CHANNEL = "com.guichaguri.trackplayer";
     public static final String LOG = "RNTrackPlayer";
@@ -137,7 +144,7 @@ public class Utils {
         }
     }
 
-    public static void setRating(Bundle data, String key, RatingCompat rating) {
+    public static void setRating(WritableMap data, String key, RatingCompat rating) {
         if(!rating.isRated()) return;
         int ratingType = rating.getRatingStyle();
 
@@ -160,6 +167,89 @@ public class Utils {
         return defaultValue;
     }
 
+    public static JSONObject toJson(Bundle data) {
+        JSONObject json = new JSONObject();
+
+        for(String key : data.keySet()) {
+            try {
+                json.put(key, toJsonValue(data.get(key)));
+            } catch(JSONException ex) {
+                // Non-finite numbers can't be represented in JSON, so we'll skip them
+            }
+        }
+
+        return json;
+    }
+
+    private static Object toJsonValue(Object value) {
+        if(value == null) {
+            return JSONObject.NULL;
+        } else if(value instanceof Bundle) {
+            return toJson((Bundle)value);
+        } else if(value instanceof Collection) {
+            JSONArray array = new JSONArray();
+            for(Object o : (Collection)value) array.put(toJsonValue(o));
+            return array;
+        } else if(value.getClass().isArray()) {
+            JSONArray array = new JSONArray();
+            for(int i = 0; i < Array.getLength(value); i++) {
+                array.put(toJsonValue(Array.get(value, i)));
+            }
+            return array;
+        }
+
+        return JSONObject.wrap(value);
+    }
+
+    public static Bundle fromJson(JSONObject json) {
+        Bundle bundle = new Bundle();
+        Iterator<String> keys = json.keys();
+
+        while(keys.hasNext()) {
+            String key = keys.next();
+            Object value = json.opt(key);
+
+            // Numbers are stored as doubles, just like the bundles converted from JS
+            if(value instanceof JSONObject) {
+                bundle.putBundle(key, fromJson((JSONObject)value));
+            } else if(value instanceof JSONArray) {
+                bundle.putSerializable(key, fromJson((JSONArray)value));
+            } else if(value instanceof Number) {
+                bundle.putDouble(key, ((Number)value).doubleValue());
+            } else if(value instanceof Boolean) {
+                bundle.putBoolean(key, (Boolean)value);
+            } else if(value instanceof String) {
+                bundle.putString(key, (String)value);
+            } else {
+                bundle.putString(key, null);
+            }
+        }
+
+        return bundle;
+    }
+
+    private static ArrayList<Object> fromJson(JSONArray json) {
+        ArrayList<Object> list = new ArrayList<>(json.length());
+
+        for(int i = 0; i < json.length(); i++) {
+            Object value = json.opt(i);
+
+            if(value instanceof JSONObject) {
+                list.add(fromJson((JSONObject)value));
+            } else if(value instanceof JSONArray) {
+                list.add(fromJson((JSONArray)value));
+            } else if(value instanceof Number) {
+                list.add(((Number)value).doubleValue());
+            } else if(value == JSONObject.NULL) {
+                list.add(null);
+            } else {
+                list.add(value);
+            }
+        }
+
+        return list;
+    }
+
     public static String getNotificationChannel(Context context) {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel channel = new NotificationChannel(
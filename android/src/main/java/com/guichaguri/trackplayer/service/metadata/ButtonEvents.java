@@ -5,12 +5,13 @@ import android.os.Bundle;
 import android.provider.MediaStore;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.MediaSessionCompat;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
 import com.guichaguri.trackplayer.module.MusicEvents;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.MusicService;
 import com.guichaguri.trackplayer.service.Utils;
 import com.guichaguri.trackplayer.service.models.Track;
-import java.util.List;
 
 /**
  * @author Guichaguri
@@ -43,16 +44,16 @@ public class ButtonEvents extends MediaSessionCompat.Callback {
 
     @Override
     public void onPlayFromMediaId(String mediaId, Bundle extras) {
-        Bundle bundle = new Bundle();
-        bundle.putString("id", mediaId);
-        service.emit(MusicEvents.BUTTON_PLAY_FROM_ID, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putString("id", mediaId);
+        service.emit(MusicEvents.BUTTON_PLAY_FROM_ID, data);
     }
 
     @SuppressLint("InlinedApi")
     @Override
     public void onPlayFromSearch(String query, Bundle extras) {
-        Bundle bundle = new Bundle();
-        bundle.putString("query", query);
+        WritableMap data = Arguments.createMap();
+        data.putString("query", query);
 
         if(extras.containsKey(MediaStore.EXTRA_MEDIA_FOCUS)) {
             String focus = extras.getString(MediaStore.EXTRA_MEDIA_FOCUS);
@@ -69,35 +70,31 @@ public class ButtonEvents extends MediaSessionCompat.Callback {
                 focus = "title";
             }
 
-            bundle.putString("focus", focus);
+            data.putString("focus", focus);
         }
 
         if(extras.containsKey(MediaStore.EXTRA_MEDIA_TITLE))
-            bundle.putString("title", extras.getString(MediaStore.EXTRA_MEDIA_TITLE));
+            data.putString("title", extras.getString(MediaStore.EXTRA_MEDIA_TITLE));
         if(extras.containsKey(MediaStore.EXTRA_MEDIA_ARTIST))
-            bundle.putString("artist", extras.getString(MediaStore.EXTRA_MEDIA_ARTIST));
+            data.putString("artist", extras.getString(MediaStore.EXTRA_MEDIA_ARTIST));
         if(extras.containsKey(MediaStore.EXTRA_MEDIA_ALBUM))
-            bundle.putString("album", extras.getString(MediaStore.EXTRA_MEDIA_ALBUM));
+            data.putString("album", extras.getString(MediaStore.EXTRA_MEDIA_ALBUM));
         if(extras.containsKey(MediaStore.EXTRA_MEDIA_GENRE))
-            bundle.putString("genre", extras.getString(MediaStore.EXTRA_MEDIA_GENRE));
+            data.putString("genre", extras.getString(MediaStore.EXTRA_MEDIA_GENRE));
         if(extras.containsKey(MediaStore.EXTRA_MEDIA_PLAYLIST))
-            bundle.putString("playlist", extras.getString(MediaStore.EXTRA_MEDIA_PLAYLIST));
+            data.putString("playlist", extras.getString(MediaStore.EXTRA_MEDIA_PLAYLIST));
 
-        service.emit(MusicEvents.BUTTON_PLAY_FROM_SEARCH, bundle);
+        service.emit(MusicEvents.BUTTON_PLAY_FROM_SEARCH, data);
     }
 
     @Override
     public void onSkipToQueueItem(long id) {
-        List<Track> tracks = manager.getPlayback().getQueue();
+        Track track = manager.getPlayback().getQueue().getByQueueId(id);
+        if(track == null) return;
 
-        for(Track track : tracks) {
-            if(track.queueId != id) continue;
-
-            Bundle bundle = new Bundle();
-            bundle.putString("id", track.id);
-            service.emit(MusicEvents.BUTTON_SKIP, bundle);
-            break;
-        }
+        WritableMap data = Arguments.createMap();
+        data.putString("id", track.id);
+        service.emit(MusicEvents.BUTTON_SKIP, data);
     }
 
     @Override
@@ -112,29 +109,29 @@ public class ButtonEvents extends MediaSessionCompat.Callback {
 
     @Override
     public void onRewind() {
-        Bundle bundle = new Bundle();
-        bundle.putInt("interval", manager.getMetadata().getJumpInterval());
-        service.emit(MusicEvents.BUTTON_JUMP_BACKWARD, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putInt("interval", manager.getMetadata().getJumpInterval());
+        service.emit(MusicEvents.BUTTON_JUMP_BACKWARD, data);
     }
 
     @Override
     public void onFastForward() {
-        Bundle bundle = new Bundle();
-        bundle.putInt("interval", manager.getMetadata().getJumpInterval());
-        service.emit(MusicEvents.BUTTON_JUMP_FORWARD, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putInt("interval", manager.getMetadata().getJumpInterval());
+        service.emit(MusicEvents.BUTTON_JUMP_FORWARD, data);
     }
 
     @Override
     public void onSeekTo(long pos) {
-        Bundle bundle = new Bundle();
-        bundle.putDouble("position", Utils.toSeconds(pos));
-        service.emit(MusicEvents.BUTTON_SEEK_TO, bundle);
+        WritableMap data = Arguments.createMap();
+        data.putDouble("position", Utils.toSeconds(pos));
+        service.emit(MusicEvents.BUTTON_SEEK_TO, data);
     }
 
     @Override
     public void onSetRating(RatingCompat rating) {
-        Bundle bundle = new Bundle();
-        Utils.setRating(bundle, "rating", rating);
-        service.emit(MusicEvents.BUTTON_SET_RATING, bundle);
+        WritableMap data = Arguments.createMap();
+        Utils.setRating(data, "rating", rating);
+        service.emit(MusicEvents.BUTTON_SET_RATING, data);
     }
 }
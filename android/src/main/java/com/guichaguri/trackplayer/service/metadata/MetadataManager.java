@@ -10,6 +10,8 @@ import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import androidx.core.app.NotificationCompat;
 import androidx.core.app.NotificationCompat.Action;
 import android.support.v4.media.MediaMetadataCompat;
@@ -17,6 +19,7 @@ import android.support.v4.media.RatingCompat;
 import androidx.media.app.NotificationCompat.MediaStyle;
 import androidx.media.session.MediaButtonReceiver;
 import android.support.v4.media.session.MediaSessionCompat;
+import android.support.v4.media.session.MediaSessionCompat.QueueItem;
 import android.support.v4.media.session.PlaybackStateCompat;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.RequestManager;
@@ -28,29 +31,51 @@ import com.guichaguri.trackplayer.R;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.MusicService;
 import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
 import com.guichaguri.trackplayer.service.models.Track;
 import com.guichaguri.trackplayer.service.player.ExoPlayback;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
+ * Manages the media session and the notification.
+ *
+ * The methods are called from the player thread. The notification and the artwork requests are handled in the main
+ * thread, as the notification builder isn't thread-safe and Glide requires it.
+ *
  * @author Guichaguri
  */
 public class MetadataManager {
 
+    // The media session queue is sent in a single binder transaction, so only the tracks around the current one are published
+    private static final int QUEUE_WINDOW_SIZE = 100;
+    private static final int QUEUE_WINDOW_MARGIN = 10;
+    private static final long QUEUE_UPDATE_DELAY_MS = 250;
+
     private final MusicService service;
     private final MusicManager manager;
     private final MediaSessionCompat session;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
 
-    private int ratingType = RatingCompat.RATING_NONE;
-    private int jumpInterval = 15;
-    private long actions = 0;
+    private volatile int ratingType = RatingCompat.RATING_NONE;
+    private volatile int jumpInterval = 15;
+    private volatile long actions = 0;
     private long compactActions = 0;
     private SimpleTarget<Bitmap> artworkTarget;
     private NotificationCompat.Builder builder;
 
     private Action previousAction, rewindAction, playAction, pauseAction, stopAction, forwardAction, nextAction;
 
+    private final Runnable queueUpdate = this::publishQueue;
+    private boolean queueUpdatePending = false;
+    private long queueVersion = -1;
+    private int queueStart = 0, queueEnd = 0;
+
+    // Updates received while a batch is running, published only once when it ends
+    private int batchDepth = 0;
+    private Track batchTrack = null;
+    private boolean batchPlayback = false, batchNotification = false;
+
     public MetadataManager(MusicService service, MusicManager manager) {
         this.service = service;
         this.manager = manager;
@@ -100,17 +125,32 @@ public class MetadataManager {
      * @param options The options
      */
     public void updateOptions(Bundle options) {
+        // Update the jump interval
+        jumpInterval = Utils.getInt(options, "jumpInterval", 15);
+
+        // Update the rating type
+        ratingType = Utils.getInt(options, "ratingType", RatingCompat.RATING_NONE);
+        session.setRatingType(ratingType);
+
+        // Create the actions mask
+        List<Integer> capabilities = options.getIntegerArrayList("capabilities");
+        long actions = 0;
+        if(capabilities != null) {
+            for(int cap : capabilities) actions |= cap;
+        }
+        this.actions = actions;
+
+        runOnMain(() -> updateNotificationOptions(options));
+    }
+
+    private void updateNotificationOptions(Bundle options) {
         List<Integer> capabilities = options.getIntegerArrayList("capabilities");
         List<Integer> notification = options.getIntegerArrayList("notificationCapabilities");
         List<Integer> compact = options.getIntegerArrayList("compactCapabilities");
 
-        actions = 0;
         compactActions = 0;
 
         if(capabilities != null) {
-            // Create the actions mask
-            for(int cap : capabilities) actions |= cap;
-
             // If there is no notification capabilities defined, we'll show all capabilities available
             if(notification == null) notification = capabilities;
 
@@ -143,13 +183,6 @@ public class MetadataManager {
         // Update the icon
         builder.setSmallIcon(getIcon(options, "icon", R.drawable.play));
 
-        // Update the jump interval
-        jumpInterval = Utils.getInt(options, "jumpInterval", 15);
-
-        // Update the rating type
-        ratingType = Utils.getInt(options, "ratingType", RatingCompat.RATING_NONE);
-        session.setRatingType(ratingType);
-
         updateNotification();
     }
 
@@ -190,6 +223,18 @@ public class MetadataManager {
      * @param track The new track
      */
     public void updateMetadata(Track track) {
+        if(batchDepth > 0) {
+            batchTrack = track;
+            return;
+        }
+
+        runOnMain(() -> {
+            updateMetadataInMain(track);
+            updateNotification();
+        });
+    }
+
+    private void updateMetadataInMain(Track track) {
         MediaMetadataCompat.Builder metadata = track.toMediaMetadata();
 
         RequestManager rm = Glide.with(service.getApplicationContext());
@@ -216,7 +261,50 @@ public class MetadataManager {
         builder.setSubText(track.album);
 
         session.setMetadata(metadata.build());
-        updateNotification();
+    }
+
+    /**
+     * Schedules an update to the media session queue.
+     * Multiple updates in a short interval, such as bulk edits, are published only once.
+     */
+    public void updateQueue() {
+        Handler handler = manager.getHandler();
+        if(queueUpdatePending || handler == null) return;
+
+        queueUpdatePending = true;
+        handler.postDelayed(queueUpdate, QUEUE_UPDATE_DELAY_MS);
+    }
+
+    private void publishQueue() {
+        queueUpdatePending = false;
+
+        ExoPlayback playback = manager.getPlayback();
+        if(playback == null) return;
+
+        QueueSnapshot queue = playback.getQueue();
+        int size = queue.size();
+        int index = Math.max(0, Math.min(playback.getCurrentIndex(), size - 1));
+
+        if(queue.getVersion() == queueVersion) {
+            // The window only slides when the current track gets close to one of its edges
+            boolean afterStart = queueStart == 0 || index >= queueStart + QUEUE_WINDOW_MARGIN;
+            boolean beforeEnd = queueEnd >= size || index < queueEnd - QUEUE_WINDOW_MARGIN;
+            if(afterStart && beforeEnd) return;
+        }
+
+        int start = Math.max(0, Math.min(index - QUEUE_WINDOW_SIZE / 2, size - QUEUE_WINDOW_SIZE));
+        int end = Math.min(size, start + QUEUE_WINDOW_SIZE);
+
+        if(queue.getVersion() == queueVersion && start == queueStart && end == queueEnd) return;
+
+        List<QueueItem> items = new ArrayList<>(end - start);
+        for(int i = start; i < end; i++) items.add(queue.get(i).toQueueItem());
+
+        session.setQueue(items.isEmpty() ? null : items);
+
+        queueVersion = queue.getVersion();
+        queueStart = start;
+        queueEnd = end;
     }
 
     /**
@@ -224,8 +312,39 @@ public class MetadataManager {
      * @param playback The player
      */
     public void updatePlayback(ExoPlayback playback) {
+        if(batchDepth > 0) {
+            batchPlayback = true;
+            return;
+        }
+
+        int state = publishPlayback(playback);
+
+        runOnMain(() -> {
+            updateNotificationActions(Utils.isPlaying(state));
+            updateNotification();
+        });
+    }
+
+    private int publishPlayback(ExoPlayback playback) {
+        // Reads the player state in its own thread
         int state = playback.getState();
-        boolean playing = Utils.isPlaying(state);
+        long position = playback.getPosition();
+        float rate = playback.getRate();
+        long bufferedPosition = playback.getBufferedPosition();
+        Track track = playback.getCurrentTrack();
+
+        // Updates the media session state
+        PlaybackStateCompat.Builder pb = new PlaybackStateCompat.Builder();
+        pb.setActions(actions);
+        pb.setState(state, position, rate);
+        pb.setBufferedPosition(bufferedPosition);
+        if(track != null) pb.setActiveQueueItemId(track.queueId);
+
+        session.setPlaybackState(pb.build());
+        return state;
+    }
+
+    private void updateNotificationActions(boolean playing) {
         List<Integer> compact = new ArrayList<>();
         builder.mActions.clear();
 
@@ -273,28 +392,77 @@ public class MetadataManager {
             builder.setStyle(style);
 
         }
-
-        // Updates the media session state
-        PlaybackStateCompat.Builder pb = new PlaybackStateCompat.Builder();
-        pb.setActions(actions);
-        pb.setState(state, playback.getPosition(), playback.getRate());
-        pb.setBufferedPosition(playback.getBufferedPosition());
-
-        session.setPlaybackState(pb.build());
-        updateNotification();
     }
 
     public void setActive(boolean active) {
         this.session.setActive(active);
 
-        updateNotification();
+        if(batchDepth > 0) {
+            batchNotification = true;
+            return;
+        }
+
+        runOnMain(this::updateNotification);
+    }
+
+    /**
+     * Holds the metadata, playback and notification updates until {@link #endBatch()} is called.
+     * Batches can be nested, and must be started and ended in the player thread.
+     */
+    public void beginBatch() {
+        batchDepth++;
+    }
+
+    /**
+     * Publishes the updates held since {@link #beginBatch()}, rebuilding the notification only once
+     */
+    public void endBatch() {
+        if(batchDepth == 0 || --batchDepth > 0) return;
+
+        Track track = batchTrack;
+        ExoPlayback playback = batchPlayback ? manager.getPlayback() : null;
+        boolean notification = batchNotification || track != null || playback != null;
+
+        batchTrack = null;
+        batchPlayback = false;
+        batchNotification = false;
+
+        int state = playback != null ? publishPlayback(playback) : PlaybackStateCompat.STATE_NONE;
+
+        if(!notification) return;
+
+        runOnMain(() -> {
+            if(track != null) updateMetadataInMain(track);
+            if(playback != null) updateNotificationActions(Utils.isPlaying(state));
+            updateNotification();
+        });
     }
 
     public void destroy() {
-        service.stopForeground(true);
+        batchDepth = 0;
+        batchTrack = null;
+        batchPlayback = batchNotification = false;
+
+        Handler handler = manager.getHandler();
+        if(handler != null) handler.removeCallbacks(queueUpdate);
 
         session.setActive(false);
-        session.release();
+
+        runOnMain(() -> {
+            if(artworkTarget != null) Glide.with(service.getApplicationContext()).clear(artworkTarget);
+            artworkTarget = null;
+
+            service.stopForeground(true);
+            session.release();
+        });
+    }
+
+    private void runOnMain(Runnable r) {
+        if(Looper.myLooper() == Looper.getMainLooper()) {
+            r.run();
+        } else {
+            mainHandler.post(r);
+        }
     }
 
     private void updateNotification() {
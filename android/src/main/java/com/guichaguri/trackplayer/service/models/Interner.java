@@ -0,0 +1,40 @@
+package com.guichaguri.trackplayer.service.models;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Deduplicates values that repeat across tracks, such as artists, albums and headers.
+ *
+ * Values are weakly referenced, so they are released once no track uses them anymore.
+ *
+ * @author Guichaguri
+ */
+final class Interner {
+
+    private static final Map<Object, WeakReference<Object>> pool = new WeakHashMap<>();
+
+    private Interner() {}
+
+    /**
+     * Gets the shared instance equal to the given value
+     * @param value The value, which must be immutable
+     * @return The shared instance or null if the value is null
+     */
+    @SuppressWarnings("unchecked")
+    static synchronized <T> T intern(T value) {
+        if(value == null) return null;
+
+        WeakReference<Object> ref = pool.get(value);
+        Object shared = ref == null ? null : ref.get();
+
+        if(shared == null) {
+            pool.put(value, new WeakReference<>(value));
+            return value;
+        }
+
+        return (T)shared;
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.guichaguri.trackplayer.service.models;
+
+import android.os.SystemClock;
+import android.support.v4.media.session.PlaybackStateCompat;
+import com.google.android.exoplayer2.C;
+import com.guichaguri.trackplayer.service.player.ExoPlayback;
+
+/**
+ * An immutable copy of the playback state, which can be read from any thread without going through the player thread.
+ *
+ * The position is extrapolated from the time the snapshot was taken while playing.
+ *
+ * @author Guichaguri
+ */
+public class PlaybackSnapshot {
+
+    public static final PlaybackSnapshot EMPTY = new PlaybackSnapshot(PlaybackStateCompat.STATE_NONE, null,
+            C.POSITION_UNSET, 0, C.TIME_UNSET, 1, 1, SystemClock.elapsedRealtime());
+
+    /**
+     * Takes a snapshot of the playback, which has to be called in the player thread
+     * @param playback The playback
+     * @return The snapshot
+     */
+    public static PlaybackSnapshot of(ExoPlayback playback) {
+        Track track = playback.getCurrentTrack();
+
+        return new PlaybackSnapshot(playback.getState(), track != null ? track.id : null, playback.getPosition(),
+                playback.getBufferedPosition(), playback.getDuration(), playback.getRate(), playback.getVolume(),
+                SystemClock.elapsedRealtime());
+    }
+
+    public final int state;
+    public final String trackId;
+    public final long bufferedPosition;
+    public final long duration;
+    public final float rate;
+    public final float volume;
+
+    private final long position;
+    private final long time;
+
+    private PlaybackSnapshot(int state, String trackId, long position, long bufferedPosition, long duration,
+                             float rate, float volume, long time) {
+        this.state = state;
+        this.trackId = trackId;
+        this.position = position;
+        this.bufferedPosition = bufferedPosition;
+        this.duration = duration;
+        this.rate = rate;
+        this.volume = volume;
+        this.time = time;
+    }
+
+    /**
+     * Gets the current position, extrapolated from the time the snapshot was taken
+     * @return The position in milliseconds or {@link C#POSITION_UNSET} if it's unknown
+     */
+    public long getPosition() {
+        if(position == C.POSITION_UNSET || state != PlaybackStateCompat.STATE_PLAYING) return position;
+
+        long current = position + (long)((SystemClock.elapsedRealtime() - time) * rate);
+
+        // The player will stop at the end of the track, so we won't go past it
+        if(duration != C.TIME_UNSET && duration > 0) current = Math.min(current, duration);
+
+        return current;
+    }
+
+}
@@ -0,0 +1,153 @@
+package com.guichaguri.trackplayer.service.models;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * An immutable version of the queue, which can be read from any thread without locks.
+ *
+ * The id indexes are only built when they're first needed.
+ *
+ * @author Guichaguri
+ */
+public class QueueSnapshot extends AbstractList<Track> implements RandomAccess {
+
+    private final Track[] tracks;
+    private final long version;
+
+    private volatile Map<String, Integer> ids;
+    private volatile Map<Long, Integer> queueIds;
+
+    private int cachedOffset = -1, cachedEnd = -1;
+    private String cachedJson;
+
+    QueueSnapshot(Track[] tracks, long version) {
+        this.tracks = tracks;
+        this.version = version;
+    }
+
+    @Override
+    public Track get(int index) {
+        if(index < 0 || index >= tracks.length) throw new IndexOutOfBoundsException("Index: " + index);
+        return tracks[index];
+    }
+
+    @Override
+    public int size() {
+        return tracks.length;
+    }
+
+    /**
+     * Gets the queue version, which changes on every mutation
+     * @return The version
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Gets the position of a track
+     * @param id The track id
+     * @return The position or -1 if the track is not in the queue
+     */
+    public int indexOf(String id) {
+        if(id == null) return -1;
+
+        Integer index = getIds().get(id);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * Gets the position of a track by its media session queue id
+     * @param queueId The queue id
+     * @return The position or -1 if the track is not in the queue
+     */
+    public int indexOfQueueId(long queueId) {
+        Map<Long, Integer> map = queueIds;
+
+        if(map == null) {
+            map = new HashMap<>(tracks.length * 2);
+            for(int i = 0; i < tracks.length; i++) map.put(tracks[i].queueId, i);
+            queueIds = map;
+        }
+
+        Integer index = map.get(queueId);
+        return index == null ? -1 : index;
+    }
+
+    public Track getById(String id) {
+        int index = indexOf(id);
+        return index == -1 ? null : tracks[index];
+    }
+
+    public Track getByQueueId(long queueId) {
+        int index = indexOfQueueId(queueId);
+        return index == -1 ? null : tracks[index];
+    }
+
+    public boolean containsId(String id) {
+        return indexOf(id) != -1;
+    }
+
+    /**
+     * Checks whether the tracks can be added without duplicating an id
+     * @param tracks The new tracks
+     * @return The first duplicated id, or null if all ids are unique
+     */
+    public String findDuplicateId(Collection<? extends Track> tracks) {
+        Set<String> added = new HashSet<>();
+
+        for(Track track : tracks) {
+            if(containsId(track.id) || !added.add(track.id)) return track.id;
+        }
+
+        return null;
+    }
+
+    /**
+     * Serializes a page of the queue into a JSON array.
+     * The last page is cached, as the snapshot never changes.
+     * @param offset The index of the first track
+     * @param limit The maximum amount of tracks, or a negative number for no limit
+     * @return The JSON array
+     */
+    public synchronized String toJson(int offset, int limit) {
+        offset = Math.max(0, Math.min(offset, tracks.length));
+        int end = limit < 0 ? tracks.length : (int)Math.min((long)offset + limit, tracks.length);
+
+        if(cachedJson != null && cachedOffset == offset && cachedEnd == end) {
+            return cachedJson;
+        }
+
+        StringBuilder builder = new StringBuilder("[");
+
+        for(int i = offset; i < end; i++) {
+            if(i > offset) builder.append(',');
+            builder.append(tracks[i].toJson());
+        }
+
+        cachedJson = builder.append(']').toString();
+        cachedOffset = offset;
+        cachedEnd = end;
+        return cachedJson;
+    }
+
+    private Map<String, Integer> getIds() {
+        Map<String, Integer> map = ids;
+
+        if(map == null) {
+            // Concurrent readers might build it twice, but they will build the same index
+            map = new HashMap<>(tracks.length * 2);
+            for(int i = 0; i < tracks.length; i++) map.put(tracks[i].id, i);
+            ids = map;
+        }
+
+        return map;
+    }
+
+}
@@ -8,6 +8,7 @@ import android.support.v4.media.MediaMetadataCompat;
 import android.support.v4.media.RatingCompat;
 import android.support.v4.media.session.MediaSessionCompat.QueueItem;
 import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.extractor.ExtractorsFactory;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
 import com.google.android.exoplayer2.source.dash.DashMediaSource;
@@ -16,15 +17,17 @@ import com.google.android.exoplayer2.source.hls.HlsMediaSource;
 import com.google.android.exoplayer2.source.smoothstreaming.DefaultSsChunkSource;
 import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.upstream.*;
-import com.google.android.exoplayer2.util.Util;
 import com.guichaguri.trackplayer.service.Utils;
 import com.guichaguri.trackplayer.service.player.LocalPlayback;
 
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import static android.support.v4.media.MediaMetadataCompat.*;
 
@@ -33,6 +36,12 @@ import static android.support.v4.media.MediaMetadataCompat.*;
  */
 public class Track {
 
+    private static final AtomicLong nextQueueId = new AtomicLong();
+
+    // Creates new extractors for every source, so it can be shared
+    private static final ExtractorsFactory EXTRACTORS = new DefaultExtractorsFactory()
+            .setConstantBitrateSeekingEnabled(true);
+
     public static List<Track> createTracks(Context context, List objects, int ratingType) {
         List<Track> tracks = new ArrayList<>();
 
@@ -55,6 +64,7 @@ public class Track {
 
     public String contentType;
     public String userAgent;
+    public String cacheKey;
 
     public Uri artwork;
 
@@ -64,7 +74,6 @@ public class Track {
     public String date;
     public String genre;
     public long duration;
-    public Bundle originalItem;
 
     public RatingCompat rating;
 
@@ -72,6 +81,12 @@ public class Track {
 
     public final long queueId;
 
+    // The original item is rebuilt from the fields when it's requested. Only the keys that can't be rebuilt,
+    // such as custom ones, are kept serialized, so the interned strings aren't stored again for every track.
+    private String extras;
+    private boolean hasOriginalItem = false;
+    private QueueItem queueItem;
+
     public Track(Context context, Bundle bundle, int ratingType) {
         id = bundle.getString("id");
 
@@ -92,37 +107,137 @@ public class Track {
             }
         }
 
-        contentType = bundle.getString("contentType");
-        userAgent = bundle.getString("userAgent");
+        contentType = Interner.intern(bundle.getString("contentType"));
+        userAgent = Interner.intern(bundle.getString("userAgent"));
+        cacheKey = bundle.getString("cacheKey");
 
         Bundle httpHeaders = bundle.getBundle("headers");
         if(httpHeaders != null) {
-            headers = new HashMap<>();
+            Map<String, String> map = new HashMap<>();
             for(String header : httpHeaders.keySet()) {
-                headers.put(header, httpHeaders.getString(header));
+                map.put(header, httpHeaders.getString(header));
             }
+            headers = Interner.intern(Collections.unmodifiableMap(map));
         }
 
         setMetadata(context, bundle, ratingType);
 
-        queueId = System.currentTimeMillis();
-        originalItem = bundle;
+        queueId = nextQueueId.incrementAndGet();
+        setOriginalItem(bundle);
     }
 
-    public void setMetadata(Context context, Bundle bundle, int ratingType) {
-        artwork = Utils.getUri(context, bundle, "artwork");
+    /**
+     * Updates the metadata. It's synchronized with {@link #getOriginalItem()},
+     * so the queue store, which serializes the tracks in the background, never sees a half updated track.
+     */
+    public synchronized void setMetadata(Context context, Bundle bundle, int ratingType) {
+        // The previous values are kept in the original item, even if the new metadata doesn't have them
+        Bundle originalItem = hasOriginalItem ? getOriginalItem() : null;
+
+        artwork = Interner.intern(Utils.getUri(context, bundle, "artwork"));
 
         title = bundle.getString("title");
-        artist = bundle.getString("artist");
-        album = bundle.getString("album");
-        date = bundle.getString("date");
-        genre = bundle.getString("genre");
+        artist = Interner.intern(bundle.getString("artist"));
+        album = Interner.intern(bundle.getString("album"));
+        date = Interner.intern(bundle.getString("date"));
+        genre = Interner.intern(bundle.getString("genre"));
         duration = Utils.toMillis(bundle.getDouble("duration", 0));
 
         rating = Utils.getRating(bundle, "rating", ratingType);
 
-        if (originalItem != null && originalItem != bundle)
+        if(originalItem != null) {
             originalItem.putAll(bundle);
+            setOriginalItem(originalItem);
+        }
+
+        queueItem = null;
+    }
+
+    /**
+     * Keeps the keys of the original item that can't be rebuilt from the fields
+     */
+    private void setOriginalItem(Bundle item) {
+        Bundle bundle = new Bundle(item);
+
+        removeIfEqual(bundle, "id", id);
+        removeIfEqual(bundle, "title", title);
+        removeIfEqual(bundle, "artist", artist);
+        removeIfEqual(bundle, "album", album);
+        removeIfEqual(bundle, "date", date);
+        removeIfEqual(bundle, "genre", genre);
+        removeIfEqual(bundle, "contentType", contentType);
+        removeIfEqual(bundle, "userAgent", userAgent);
+        removeIfEqual(bundle, "cacheKey", cacheKey);
+        removeIfEqual(bundle, "url", resourceId == 0 && uri != null ? uri.toString() : null);
+        removeIfEqual(bundle, "artwork", artwork != null ? artwork.toString() : null);
+
+        Bundle httpHeaders = bundle.getBundle("headers");
+        if(httpHeaders != null && headers != null && httpHeaders.size() == headers.size()) {
+            boolean equal = true;
+
+            for(String header : httpHeaders.keySet()) {
+                Object value = httpHeaders.get(header);
+                if(value == null || !value.equals(headers.get(header))) equal = false;
+            }
+
+            if(equal) bundle.remove("headers");
+        }
+
+        extras = bundle.isEmpty() ? null : Utils.toJson(bundle).toString();
+        hasOriginalItem = true;
+    }
+
+    private static void removeIfEqual(Bundle bundle, String key, String value) {
+        if(value != null && value.equals(bundle.get(key))) bundle.remove(key);
+    }
+
+    private static void putIfAbsent(Bundle bundle, String key, String value) {
+        if(value != null && !bundle.containsKey(key)) bundle.putString(key, value);
+    }
+
+    /**
+     * Rebuilds the object this track was created from, including the updated metadata. Can be called from any thread.
+     * @return A new bundle
+     */
+    public synchronized Bundle getOriginalItem() {
+        Bundle bundle;
+
+        try {
+            bundle = extras == null ? new Bundle() : Utils.fromJson(new JSONObject(extras));
+        } catch(JSONException ex) {
+            // Should never happen, the JSON was created by us
+            throw new RuntimeException(ex);
+        }
+
+        putIfAbsent(bundle, "id", id);
+        putIfAbsent(bundle, "title", title);
+        putIfAbsent(bundle, "artist", artist);
+        putIfAbsent(bundle, "album", album);
+        putIfAbsent(bundle, "date", date);
+        putIfAbsent(bundle, "genre", genre);
+        putIfAbsent(bundle, "contentType", contentType);
+        putIfAbsent(bundle, "userAgent", userAgent);
+        putIfAbsent(bundle, "cacheKey", cacheKey);
+        putIfAbsent(bundle, "url", resourceId == 0 && uri != null ? uri.toString() : null);
+        putIfAbsent(bundle, "artwork", artwork != null ? artwork.toString() : null);
+
+        if(headers != null && !bundle.containsKey("headers")) {
+            Bundle httpHeaders = new Bundle();
+            for(Map.Entry<String, String> header : headers.entrySet()) {
+                httpHeaders.putString(header.getKey(), header.getValue());
+            }
+            bundle.putBundle("headers", httpHeaders);
+        }
+
+        return bundle;
+    }
+
+    /**
+     * Serializes the original item into JSON
+     * @return The JSON object
+     */
+    public String toJson() {
+        return Utils.toJson(getOriginalItem()).toString();
     }
 
     public MediaMetadataCompat.Builder toMediaMetadata() {
@@ -151,7 +266,13 @@ public class Track {
         return builder;
     }
 
+    /**
+     * Creates the media session queue item, caching it until the metadata changes
+     * @return The queue item
+     */
     public QueueItem toQueueItem() {
+        if(queueItem != null) return queueItem;
+
         MediaDescriptionCompat descr = new MediaDescriptionCompat.Builder()
                 .setTitle(title)
                 .setSubtitle(artist)
@@ -160,54 +281,13 @@ public class Track {
                 .setIconUri(artwork)
                 .build();
 
-        return new QueueItem(descr, queueId);
+        queueItem = new QueueItem(descr, queueId);
+        return queueItem;
     }
 
     public MediaSource toMediaSource(Context ctx, LocalPlayback playback) {
-        // Updates the user agent if not set
-        if(userAgent == null || userAgent.isEmpty())
-            userAgent = Util.getUserAgent(ctx, "react-native-track-player");
-
-        DataSource.Factory ds;
-
-        if(resourceId != 0) {
-
-            try {
-                RawResourceDataSource raw = new RawResourceDataSource(ctx);
-                raw.open(new DataSpec(uri));
-                ds = new DataSource.Factory() {
-                    @Override
-                    public DataSource createDataSource() {
-                        return raw;
-                    }
-                };
-            } catch(IOException ex) {
-                // Should never happen
-                throw new RuntimeException(ex);
-            }
-
-        } else if(Utils.isLocal(uri)) {
-
-            // Creates a local source factory
-            ds = new DefaultDataSourceFactory(ctx, userAgent);
-
-        } else {
-
-            // Creates a default http source factory, enabling cross protocol redirects
-            DefaultHttpDataSourceFactory factory = new DefaultHttpDataSourceFactory(
-                    userAgent, null,
-                    DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
-                    DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
-                    true
-            );
-
-            if(headers != null) {
-                factory.getDefaultRequestProperties().set(headers);
-            }
-
-            ds = playback.enableCaching(factory);
-
-        }
+        // Shared between tracks with the same user agent and headers
+        DataSource.Factory ds = playback.getDataSourceFactory(this);
 
         switch(type) {
             case DASH:
@@ -217,8 +297,8 @@ public class Track {
             case SMOOTH_STREAMING:
                 return createSsSource(ds);
             default:
-                return new ProgressiveMediaSource.Factory(ds, new DefaultExtractorsFactory()
-                        .setConstantBitrateSeekingEnabled(true))
+                return new ProgressiveMediaSource.Factory(ds, EXTRACTORS)
+                        .setCustomCacheKey(cacheKey)
                         .createMediaSource(uri);
         }
     }
@@ -0,0 +1,188 @@
+package com.guichaguri.trackplayer.service.models;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The playback queue, indexed by track id.
+ *
+ * It must only be modified in the player thread. The changes are published as a new {@link QueueSnapshot}
+ * when {@link #commit()} is called, which other threads can read without locks.
+ *
+ * Membership is kept in a hash map that is updated on every mutation. Positions are indexed lazily:
+ * a mutation only marks the positions after it as stale, and they are rebuilt once on the next lookup.
+ *
+ * @author Guichaguri
+ */
+public class TrackQueue extends AbstractList<Track> implements RandomAccess {
+
+    // Versions are unique across queues, so a new player never reuses the version of an old queue
+    private static final AtomicLong nextVersion = new AtomicLong();
+
+    private final List<Track> tracks = new ArrayList<>();
+
+    private final Map<String, Track> ids = new HashMap<>();
+
+    private final Map<String, Integer> positions = new HashMap<>();
+    private int indexedUntil = 0;
+
+    private volatile QueueSnapshot snapshot = new QueueSnapshot(new Track[0], nextVersion.incrementAndGet());
+    private boolean modified = false;
+
+    /**
+     * Gets the latest immutable version of the queue. Can be called from any thread.
+     * @return The snapshot
+     */
+    public QueueSnapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Publishes the changes made since the last commit as a new snapshot.
+     * Commands call it once after all of their changes, so the tracks are only copied once per command.
+     */
+    public void commit() {
+        if(!modified) return;
+
+        modified = false;
+        snapshot = new QueueSnapshot(tracks.toArray(new Track[0]), nextVersion.incrementAndGet());
+    }
+
+    @Override
+    public Track get(int index) {
+        return tracks.get(index);
+    }
+
+    @Override
+    public int size() {
+        return tracks.size();
+    }
+
+    /**
+     * Gets the position of a track
+     * @param id The track id
+     * @return The position or -1 if the track is not in the queue
+     */
+    public int indexOf(String id) {
+        if(id == null || !ids.containsKey(id)) return -1;
+
+        if(indexedUntil < tracks.size()) {
+            for(int i = indexedUntil; i < tracks.size(); i++) {
+                positions.put(tracks.get(i).id, i);
+            }
+            indexedUntil = tracks.size();
+        }
+
+        return positions.get(id);
+    }
+
+    public Track getById(String id) {
+        return id == null ? null : ids.get(id);
+    }
+
+    @Override
+    public void add(int index, Track track) {
+        if(ids.containsKey(track.id))
+            throw new IllegalArgumentException("The track " + track.id + " is already in the queue");
+
+        tracks.add(index, track);
+        ids.put(track.id, track);
+        invalidate(index);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends Track> c) {
+        Set<String> added = new HashSet<>();
+
+        for(Track track : c) {
+            if(ids.containsKey(track.id) || !added.add(track.id))
+                throw new IllegalArgumentException("The track " + track.id + " is already in the queue");
+        }
+
+        tracks.addAll(index, c);
+
+        for(Track track : c) ids.put(track.id, track);
+
+        invalidate(index);
+        return !c.isEmpty();
+    }
+
+    @Override
+    public Track set(int index, Track track) {
+        Track previous = tracks.get(index);
+
+        if(previous != track) {
+            if(!previous.id.equals(track.id) && ids.containsKey(track.id))
+                throw new IllegalArgumentException("The track " + track.id + " is already in the queue");
+
+            forget(previous);
+            tracks.set(index, track);
+            ids.put(track.id, track);
+            positions.put(track.id, index);
+        }
+
+        // Publishes a new version even when the track is the same, as its metadata might have changed
+        modified = true;
+        return previous;
+    }
+
+    @Override
+    public Track remove(int index) {
+        Track track = tracks.remove(index);
+        forget(track);
+        invalidate(index);
+        return track;
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex) {
+        List<Track> range = tracks.subList(fromIndex, toIndex);
+
+        for(Track track : range) forget(track);
+
+        range.clear();
+        invalidate(fromIndex);
+    }
+
+    /**
+     * Moves a track to another position
+     * @param from The current position
+     * @param to The new position
+     */
+    public void move(int from, int to) {
+        if(from == to) return;
+
+        tracks.add(to, tracks.remove(from));
+        invalidate(Math.min(from, to));
+    }
+
+    @Override
+    public void clear() {
+        tracks.clear();
+        ids.clear();
+        positions.clear();
+        indexedUntil = 0;
+        modCount++;
+        modified = true;
+    }
+
+    private void forget(Track track) {
+        ids.remove(track.id);
+        positions.remove(track.id);
+    }
+
+    private void invalidate(int index) {
+        if(index < indexedUntil) indexedUntil = index;
+        modCount++;
+        modified = true;
+    }
+
+}
@@ -0,0 +1,353 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Process;
+import android.util.Log;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.database.ExoDatabaseProvider;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.upstream.cache.ContentMetadata;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.Track;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Owns the media cache and runs the cache inspection and management commands.
+ *
+ * The cache is shared by every player in the process, and is opened in a background thread.
+ * The commands also run in that thread, as they might have to go through the whole cache index.
+ *
+ * @author Guichaguri
+ */
+public class CacheManager {
+
+    private static final String PREFERENCES = "TrackPlayer";
+    private static final String PINNED_KEYS = "pinnedCacheKeys";
+
+    public static final String POLICY_LRU = "lru";
+    public static final String POLICY_SCORED = "scored";
+
+    // Plays in a short interval are saved together
+    private static final long SCORES_SAVE_DELAY_MS = 30 * 1000;
+
+    private static DatabaseProvider databaseProvider;
+
+    /**
+     * Gets the database shared by the cache and the downloads
+     */
+    public static synchronized DatabaseProvider getDatabaseProvider(Context context) {
+        if(databaseProvider == null) databaseProvider = new ExoDatabaseProvider(context.getApplicationContext());
+        return databaseProvider;
+    }
+
+    private static CacheManager instance;
+
+    /**
+     * Gets the cache shared by every player in the process, opening it in the background
+     */
+    public static synchronized CacheManager getInstance(Context context) {
+        if(instance == null) instance = new CacheManager(context.getApplicationContext());
+        return instance;
+    }
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private final Set<String> pinnedKeys = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final List<Runnable> readyCallbacks = new ArrayList<>();
+
+    private volatile CacheKeyFactory cacheKeyFactory;
+    private volatile ScoredCacheEvictor.Listener listener;
+    private volatile long maxBytes;
+
+    private boolean opening = false;
+    private volatile SimpleCache cache;
+    private TrackCacheEvictor lruEvictor;
+    private ScoredCacheEvictor scoredEvictor;
+    private final AtomicBoolean scoresSavePending = new AtomicBoolean();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "TrackPlayer-Cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private CacheManager(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Opens the cache in the background, or updates its settings if it's already open.
+     *
+     * The eviction policy is only used when the cache is opened, it can't be changed for the rest of the process.
+     *
+     * @param maxBytes The maximum cache size
+     * @param cacheKeyFactory The factory that builds the cache keys
+     * @param policy The eviction policy, either {@link #POLICY_LRU} or {@link #POLICY_SCORED}
+     * @param listener The listener that receives the eviction decisions of the scored policy or null
+     */
+    public synchronized void open(long maxBytes, CacheKeyFactory cacheKeyFactory, String policy,
+                                  ScoredCacheEvictor.Listener listener) {
+        this.maxBytes = maxBytes;
+        this.cacheKeyFactory = cacheKeyFactory;
+        this.listener = listener;
+
+        if(opening) {
+            executor.execute(() -> {
+                if(lruEvictor != null) lruEvictor.setMaxBytes(maxBytes);
+                if(scoredEvictor != null) scoredEvictor.setMaxBytes(maxBytes);
+            });
+            return;
+        }
+
+        opening = true;
+
+        executor.execute(() -> {
+            pinnedKeys.addAll(preferences.getStringSet(PINNED_KEYS, Collections.emptySet()));
+
+            CacheEvictor evictor;
+
+            if(POLICY_LRU.equals(policy)) {
+                evictor = lruEvictor = new TrackCacheEvictor(maxBytes, pinnedKeys);
+            } else {
+                File scoresFile = new File(context.getCacheDir(), "TrackPlayer-scores.bin");
+
+                evictor = scoredEvictor = new ScoredCacheEvictor(maxBytes, pinnedKeys, context.getCacheDir(), scoresFile, (budget, size, evicted) -> {
+                    // Keeps the scores of the remaining tracks in case the process is killed
+                    executor.execute(this::saveScores);
+
+                    ScoredCacheEvictor.Listener l = this.listener;
+                    if(l != null) l.onEviction(budget, size, evicted);
+                }, this::scheduleScoresSave);
+            }
+
+            SimpleCache cache;
+
+            try {
+                File cacheDir = new File(context.getCacheDir(), "TrackPlayer");
+                cache = new SimpleCache(cacheDir, evictor, getDatabaseProvider(context));
+
+                // Waits for the index to be loaded, as the cache blocks every operation until then
+                cache.getCacheSpace();
+            } catch(Exception ex) {
+                Log.e(Utils.LOG, "Couldn't open the cache", ex);
+                return;
+            }
+
+            List<Runnable> callbacks;
+
+            synchronized(this) {
+                this.cache = cache;
+                callbacks = new ArrayList<>(readyCallbacks);
+                readyCallbacks.clear();
+            }
+
+            for(Runnable callback : callbacks) callback.run();
+        });
+    }
+
+    /**
+     * Gets the cache
+     * @return The cache or null if it's still being opened
+     */
+    public Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * Runs a callback once the cache is open
+     * @param callback The callback, which runs in a background thread or immediately if the cache is already open
+     */
+    public void whenReady(Runnable callback) {
+        synchronized(this) {
+            if(cache == null) {
+                readyCallbacks.add(callback);
+                return;
+            }
+        }
+
+        callback.run();
+    }
+
+    /**
+     * Stops waiting for the cache to be opened
+     */
+    public synchronized void cancelWhenReady(Runnable callback) {
+        readyCallbacks.remove(callback);
+    }
+
+    /**
+     * Stops reporting the eviction decisions to a listener, if it's still the current one
+     */
+    public void removeListener(ScoredCacheEvictor.Listener listener) {
+        if(this.listener == listener) this.listener = null;
+    }
+
+    /**
+     * Counts a play of a track for the scored policy
+     * @param track The track that started playing
+     */
+    public void recordPlay(Track track) {
+        String key = getKey(track);
+
+        executor.execute(() -> {
+            if(scoredEvictor != null) scoredEvictor.recordPlay(key);
+        });
+    }
+
+    /**
+     * Saves the state that is only kept in memory, such as the scores of the scored policy
+     */
+    public void flush() {
+        executor.execute(this::saveScores);
+    }
+
+    /**
+     * Gets the cache key of a track, the same one used by the player
+     * @param track The track
+     * @return The cache key
+     */
+    public String getKey(Track track) {
+        return cacheKeyFactory.buildCacheKey(new DataSpec(track.uri, 0, C.LENGTH_UNSET, track.cacheKey));
+    }
+
+    public void getInfo(Promise promise) {
+        executor.execute(() -> {
+            if(!isOpen(promise)) return;
+
+            Bundle bundle = new Bundle();
+            bundle.putDouble("size", maxBytes);
+            bundle.putDouble("used", cache.getCacheSpace());
+            bundle.putInt("pinned", pinnedKeys.size());
+            promise.resolve(Arguments.fromBundle(bundle));
+        });
+    }
+
+    public void getCachedProgress(Track track, Promise promise) {
+        String key = getKey(track);
+
+        executor.execute(() -> {
+            if(!isOpen(promise)) return;
+
+            long length = ContentMetadata.getContentLength(cache.getContentMetadata(key));
+            long cached = 0;
+            ArrayList<Bundle> ranges = new ArrayList<>();
+
+            for(CacheSpan span : cache.getCachedSpans(key)) {
+                Bundle range = new Bundle();
+                range.putDouble("start", span.position);
+                range.putDouble("end", span.position + span.length);
+                ranges.add(range);
+                cached += span.length;
+            }
+
+            Bundle bundle = new Bundle();
+            bundle.putDouble("length", length);
+            bundle.putDouble("cached", cached);
+            bundle.putParcelableArrayList("ranges", ranges);
+            bundle.putBoolean("pinned", pinnedKeys.contains(key));
+            promise.resolve(Arguments.fromBundle(bundle));
+        });
+    }
+
+    public void pin(Track track, Promise promise) {
+        String key = getKey(track);
+
+        executor.execute(() -> {
+            if(pinnedKeys.add(key)) savePins();
+            promise.resolve(null);
+        });
+    }
+
+    public void unpin(Track track, Promise promise) {
+        String key = getKey(track);
+
+        executor.execute(() -> {
+            if(pinnedKeys.remove(key)) savePins();
+            promise.resolve(null);
+        });
+    }
+
+    /**
+     * Removes a track from the cache, even if it's pinned
+     */
+    public void evict(Track track, Promise promise) {
+        String key = getKey(track);
+
+        executor.execute(() -> {
+            if(!isOpen(promise)) return;
+
+            if(pinnedKeys.remove(key)) savePins();
+            CacheUtil.remove(cache, key);
+            promise.resolve(null);
+        });
+    }
+
+    /**
+     * Removes everything from the cache, except the pinned tracks
+     */
+    public void clear(Promise promise) {
+        executor.execute(() -> {
+            if(!isOpen(promise)) return;
+
+            for(String key : new HashSet<>(cache.getKeys())) {
+                if(!pinnedKeys.contains(key)) CacheUtil.remove(cache, key);
+            }
+            promise.resolve(null);
+        });
+    }
+
+    /**
+     * Checks whether the cache was opened, rejecting the promise if it couldn't be
+     */
+    private boolean isOpen(Promise promise) {
+        if(cache != null) return true;
+        promise.reject("cache_unavailable", "The cache couldn't be opened");
+        return false;
+    }
+
+    private void saveScores() {
+        if(scoredEvictor != null) scoredEvictor.saveScores();
+    }
+
+    /**
+     * Saves the scores after a play, so they survive the process being killed before an eviction
+     */
+    private void scheduleScoresSave() {
+        if(!scoresSavePending.compareAndSet(false, true)) return;
+
+        executor.schedule(() -> {
+            scoresSavePending.set(false);
+            saveScores();
+        }, SCORES_SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void savePins() {
+        preferences.edit().putStringSet(PINNED_KEYS, new HashSet<>(pinnedKeys)).apply();
+    }
+
+}
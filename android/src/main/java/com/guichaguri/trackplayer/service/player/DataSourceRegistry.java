@@ -0,0 +1,201 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ext.okhttp.OkHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.RawResourceDataSource;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSinkFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.util.Util;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.Track;
+import java.util.HashMap;
+import java.util.Map;
+import okhttp3.Call;
+
+/**
+ * Keeps the data source factories shared between tracks with the same user agent and headers.
+ *
+ * Remote sources are read through the memory cache, then the disk cache or the downloads, and then the network.
+ *
+ * Media sources can be created in the player's internal thread when lazy loading is enabled,
+ * so the factories are always looked up with a lock.
+ *
+ * @author Guichaguri
+ */
+public class DataSourceRegistry {
+
+    private final Context context;
+    private final Cache cache;
+    private final Call.Factory httpClient;
+    private final CacheKeyFactory cacheKeyFactory;
+    private final DownloadTracker downloads;
+    private final MemoryCache memoryCache;
+    private final String defaultUserAgent;
+
+    private final Map<Key, DataSource.Factory> factories = new HashMap<>();
+    private final Map<DataSource.Factory, DataSource.Factory> downloadFactories = new HashMap<>();
+    private final Map<DataSource.Factory, DataSource.Factory> memoryFactories = new HashMap<>();
+
+    // Creates a new source for every request, so raw resources are only open while they're being read
+    private final DataSource.Factory rawFactory;
+
+    /**
+     * @param context The context
+     * @param cache The cache or null if caching is disabled
+     * @param httpClient The pooled HTTP client or null to use the default HTTP stack
+     * @param cacheKeyFactory The factory that builds the cache keys
+     * @param downloads The download tracker or null if downloads are disabled
+     * @param memoryCache The memory cache or null if it's disabled
+     */
+    public DataSourceRegistry(Context context, Cache cache, Call.Factory httpClient, CacheKeyFactory cacheKeyFactory,
+                              DownloadTracker downloads, MemoryCache memoryCache) {
+        this.context = context;
+        this.cache = cache;
+        this.httpClient = httpClient;
+        this.cacheKeyFactory = cacheKeyFactory;
+        this.downloads = downloads;
+        this.memoryCache = memoryCache;
+        this.defaultUserAgent = Util.getUserAgent(context, "react-native-track-player");
+        this.rawFactory = () -> new RawResourceDataSource(context);
+    }
+
+    /**
+     * Gets the factory for a raw resource, local or remote track
+     * @param track The track
+     * @return The shared factory
+     */
+    public synchronized DataSource.Factory get(Track track) {
+        DataSource.Factory factory = getPersistent(track);
+
+        // Local files are fast enough to be read directly
+        if(memoryCache == null || track.resourceId != 0 || Utils.isLocal(track.uri)) return factory;
+
+        DataSource.Factory memoryFactory = memoryFactories.get(factory);
+
+        if(memoryFactory == null) {
+            memoryFactory = () -> new MemoryDataSource(factory.createDataSource(), memoryCache, cacheKeyFactory);
+            memoryFactories.put(factory, memoryFactory);
+        }
+
+        return memoryFactory;
+    }
+
+    /**
+     * Gets the factory for a track without the memory cache, which reads and writes directly to the disk cache
+     * @param track The track
+     * @return The shared factory
+     */
+    public synchronized DataSource.Factory getPersistent(Track track) {
+        if(track.resourceId != 0) return rawFactory;
+
+        String userAgent = track.userAgent == null || track.userAgent.isEmpty() ? defaultUserAgent : track.userAgent;
+        boolean local = Utils.isLocal(track.uri);
+        Key key = new Key(userAgent, local ? null : track.headers, local);
+
+        DataSource.Factory factory = factories.get(key);
+
+        if(factory == null) {
+            factory = local ? createLocal(userAgent) : createRemote(userAgent, track.headers);
+            factories.put(key, factory);
+        }
+
+        if(!local && downloads != null && downloads.isDownloaded(track, getCacheKey(track))) {
+            DataSource.Factory downloadFactory = downloadFactories.get(factory);
+
+            if(downloadFactory == null) {
+                // Reads the downloaded data, only going to the network for what's missing
+                downloadFactory = new CacheDataSourceFactory(downloads.getCache(), factory, new FileDataSourceFactory(),
+                        null, CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, null, cacheKeyFactory);
+                downloadFactories.put(factory, downloadFactory);
+            }
+
+            return downloadFactory;
+        }
+
+        return factory;
+    }
+
+    private String getCacheKey(Track track) {
+        return cacheKeyFactory.buildCacheKey(new DataSpec(track.uri, 0, C.LENGTH_UNSET, track.cacheKey));
+    }
+
+    public synchronized void clear() {
+        factories.clear();
+        downloadFactories.clear();
+        memoryFactories.clear();
+    }
+
+    private DataSource.Factory createLocal(String userAgent) {
+        // Creates a local source factory
+        return new DefaultDataSourceFactory(context, userAgent);
+    }
+
+    private DataSource.Factory createRemote(String userAgent, Map<String, String> headers) {
+        HttpDataSource.BaseFactory factory;
+
+        if(httpClient != null) {
+            // Creates an OkHttp source factory, which reuses pooled connections and supports HTTP/2
+            factory = new OkHttpDataSourceFactory(httpClient, userAgent);
+        } else {
+            // Creates a default http source factory, enabling cross protocol redirects
+            factory = new DefaultHttpDataSourceFactory(
+                    userAgent, null,
+                    DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                    DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+                    true
+            );
+        }
+
+        if(headers != null) {
+            factory.getDefaultRequestProperties().set(headers);
+        }
+
+        if(cache == null) return factory;
+
+        return new CacheDataSourceFactory(cache, factory, new FileDataSourceFactory(),
+                new CacheDataSinkFactory(cache, CacheDataSink.DEFAULT_FRAGMENT_SIZE),
+                CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, null, cacheKeyFactory);
+    }
+
+    private static final class Key {
+        private final String userAgent;
+        private final Map<String, String> headers;
+        private final boolean local;
+
+        Key(String userAgent, Map<String, String> headers, boolean local) {
+            this.userAgent = userAgent;
+            this.headers = headers;
+            this.local = local;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof Key)) return false;
+
+            Key key = (Key)o;
+            return local == key.local && userAgent.equals(key.userAgent) &&
+                    (headers == null ? key.headers == null : headers.equals(key.headers));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = userAgent.hashCode();
+            result = 31 * result + (headers != null ? headers.hashCode() : 0);
+            return 31 * result + (local ? 1 : 0);
+        }
+    }
+
+}
@@ -0,0 +1,373 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.Promise;
+import com.facebook.react.bridge.WritableArray;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.database.DatabaseProvider;
+import com.google.android.exoplayer2.offline.DefaultDownloadIndex;
+import com.google.android.exoplayer2.offline.DefaultDownloaderFactory;
+import com.google.android.exoplayer2.offline.Download;
+import com.google.android.exoplayer2.offline.DownloadCursor;
+import com.google.android.exoplayer2.offline.DownloadManager;
+import com.google.android.exoplayer2.offline.DownloadRequest;
+import com.google.android.exoplayer2.offline.Downloader;
+import com.google.android.exoplayer2.offline.DownloaderConstructorHelper;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.models.TrackType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.json.JSONObject;
+
+/**
+ * Downloads tracks for offline playback.
+ *
+ * Downloads are stored in their own cache, which never evicts anything, and are indexed in the database
+ * shared with the media cache. Unfinished downloads are resumed when the tracker is created again.
+ *
+ * There is a single tracker per process, as a download cache directory can only be opened once.
+ * The download manager lives in its own thread, which is kept for as long as the process.
+ * The cache is opened in that thread too, and the commands sent before it's open wait for it in the thread queue.
+ *
+ * @author Guichaguri
+ */
+public class DownloadTracker implements DownloadManager.Listener {
+
+    public interface Listener {
+        void onDownloadChanged(Bundle download);
+    }
+
+    private static final long PROGRESS_INTERVAL_MS = 1000;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static DownloadTracker instance;
+
+    /**
+     * Gets the download tracker, creating it if needed and opening it in the background. Can be called from any thread.
+     */
+    public static synchronized DownloadTracker getInstance(Context context) {
+        if(instance == null) instance = new DownloadTracker(context.getApplicationContext());
+        return instance;
+    }
+
+    private final Context context;
+    private final String defaultUserAgent;
+
+    // Completed downloads, mapped from the key they're stored with to their id
+    private final Map<String, String> completed = new ConcurrentHashMap<>();
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final Handler handler;
+    private final Runnable progressUpdate = this::updateProgress;
+    private boolean updatingProgress = false;
+
+    private volatile SimpleCache cache;
+    private DownloadManager manager;
+
+    private DownloadTracker(Context context) {
+        this.context = context;
+        this.defaultUserAgent = Util.getUserAgent(context, "react-native-track-player");
+
+        // The download manager is bound to the looper it's created in, so it can't use a thread that might quit
+        HandlerThread thread = new HandlerThread("TrackPlayer-downloads", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+
+        handler = new Handler(thread.getLooper());
+        handler.post(this::open);
+    }
+
+    private void open() {
+        DatabaseProvider db = CacheManager.getDatabaseProvider(context);
+        File dir = new File(context.getFilesDir(), "TrackPlayer-downloads");
+        SimpleCache downloadCache;
+
+        try {
+            downloadCache = new SimpleCache(dir, new NoOpCacheEvictor(), db);
+        } catch(Exception ex) {
+            Log.e(Utils.LOG, "Couldn't open the downloads", ex);
+            return;
+        }
+
+        // The downloaders are created in the manager thread, so they get the cache directly instead of the field
+        manager = new DownloadManager(context, new DefaultDownloadIndex(db),
+                request -> createDownloader(downloadCache, request));
+        manager.addListener(this);
+
+        try(DownloadCursor cursor = manager.getDownloadIndex().getDownloads(Download.STATE_COMPLETED)) {
+            while(cursor.moveToNext()) putCompleted(cursor.getDownload().request);
+        } catch(IOException ex) {
+            Log.w(Utils.LOG, "Couldn't read the download index", ex);
+        }
+
+        // The cache is published last, so a track is never seen as downloaded while it can't be read yet
+        cache = downloadCache;
+    }
+
+    /**
+     * Gets the download cache
+     * @return The cache or null if it's still being opened
+     */
+    public Cache getCache() {
+        return cache;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setMaxParallelDownloads(int max) {
+        runWhenOpen(() -> manager.setMaxParallelDownloads(max));
+    }
+
+    /**
+     * Checks whether a track was fully downloaded. Can be called from any thread.
+     *
+     * The downloads are matched by the key they're stored with instead of their id,
+     * so a different track reusing the id of a download is not read from it.
+     *
+     * @param track The track
+     * @param cacheKey The cache key used by the player
+     * @return Whether the track can be played without network
+     */
+    public boolean isDownloaded(Track track, String cacheKey) {
+        return cache != null && completed.containsKey(getKey(track, cacheKey));
+    }
+
+    /**
+     * Starts or resumes downloading a track
+     * @param track The track
+     * @param cacheKey The cache key used by the player
+     */
+    public void download(Track track, String cacheKey) {
+        String type;
+
+        switch(track.type) {
+            case DASH:
+                type = DownloadRequest.TYPE_DASH;
+                break;
+            case HLS:
+                type = DownloadRequest.TYPE_HLS;
+                break;
+            case SMOOTH_STREAMING:
+                type = DownloadRequest.TYPE_SS;
+                break;
+            default:
+                type = DownloadRequest.TYPE_PROGRESSIVE;
+        }
+
+        // The original item is kept in the request, so downloads can be listed without the queue
+        String key = track.type == TrackType.DEFAULT ? cacheKey : null;
+        byte[] data = track.toJson().getBytes(UTF_8);
+
+        DownloadRequest request = new DownloadRequest(track.id, type, track.uri, Collections.emptyList(), key, data);
+        runWhenOpen(() -> manager.addDownload(request));
+    }
+
+    public void remove(String id) {
+        runWhenOpen(() -> manager.removeDownload(id));
+    }
+
+    /**
+     * Lists every download, including the finished ones, once the downloads are open
+     * @param promise The promise resolved with the downloads
+     */
+    public void getDownloads(Promise promise) {
+        handler.post(() -> {
+            if(manager == null) {
+                promise.reject("downloads_unavailable", "The downloads couldn't be opened");
+                return;
+            }
+
+            WritableArray downloads = Arguments.createArray();
+
+            try(DownloadCursor cursor = manager.getDownloadIndex().getDownloads()) {
+                while(cursor.moveToNext()) downloads.pushMap(Arguments.fromBundle(toBundle(cursor.getDownload())));
+            } catch(IOException ex) {
+                promise.reject("downloads_unavailable", ex);
+                return;
+            }
+
+            promise.resolve(downloads);
+        });
+    }
+
+    /**
+     * Runs a command in the download thread, after the downloads are opened. It's dropped if they couldn't be.
+     */
+    private void runWhenOpen(Runnable command) {
+        handler.post(() -> {
+            if(manager != null) command.run();
+        });
+    }
+
+    /**
+     * Creates the downloader for a request, requesting the track with its own user agent and headers
+     */
+    private Downloader createDownloader(Cache cache, DownloadRequest request) {
+        String userAgent = defaultUserAgent;
+        JSONObject headers = null;
+
+        try {
+            JSONObject item = new JSONObject(new String(request.data, UTF_8));
+            String trackUserAgent = item.optString("userAgent", null);
+
+            if(trackUserAgent != null && !trackUserAgent.isEmpty()) userAgent = trackUserAgent;
+            headers = item.optJSONObject("headers");
+        } catch(Exception ex) {
+            // Requests without the track data are downloaded with the defaults
+        }
+
+        // Creates a default http source factory, enabling cross protocol redirects
+        DefaultHttpDataSourceFactory http = new DefaultHttpDataSourceFactory(
+                userAgent, null,
+                DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+                true
+        );
+
+        if(headers != null) {
+            Iterator<String> names = headers.keys();
+
+            while(names.hasNext()) {
+                String name = names.next();
+                String value = headers.optString(name, null);
+                if(value != null) http.getDefaultRequestProperties().set(name, value);
+            }
+        }
+
+        DataSource.Factory upstream = new DefaultDataSourceFactory(context, http);
+        DownloaderConstructorHelper helper = new DownloaderConstructorHelper(cache, upstream);
+
+        return new DefaultDownloaderFactory(helper).createDownloader(request);
+    }
+
+    /**
+     * Gets the key a track is stored with, which is the cache key for progressive tracks and the URI for streams
+     */
+    private static String getKey(Track track, String cacheKey) {
+        return getKey(track.type == TrackType.DEFAULT ? cacheKey : null, track.uri);
+    }
+
+    private static String getKey(String cacheKey, Uri uri) {
+        return cacheKey != null ? cacheKey : uri.toString();
+    }
+
+    private void putCompleted(DownloadRequest request) {
+        // Drops the previous key, in case the request was updated with another URL
+        removeCompleted(request.id);
+        completed.put(getKey(request.customCacheKey, request.uri), request.id);
+    }
+
+    private void removeCompleted(String id) {
+        completed.values().removeAll(Collections.singleton(id));
+    }
+
+    @Override
+    public void onDownloadChanged(DownloadManager downloadManager, Download download) {
+        if(download.state == Download.STATE_COMPLETED) {
+            putCompleted(download.request);
+        } else {
+            removeCompleted(download.request.id);
+        }
+
+        notifyListeners(download);
+
+        if(download.state == Download.STATE_DOWNLOADING && !updatingProgress) {
+            updatingProgress = true;
+            handler.postDelayed(progressUpdate, PROGRESS_INTERVAL_MS);
+        }
+    }
+
+    @Override
+    public void onDownloadRemoved(DownloadManager downloadManager, Download download) {
+        removeCompleted(download.request.id);
+        notifyListeners(download);
+    }
+
+    private void updateProgress() {
+        boolean downloading = false;
+
+        for(Download download : manager.getCurrentDownloads()) {
+            if(download.state != Download.STATE_DOWNLOADING) continue;
+
+            notifyListeners(download);
+            downloading = true;
+        }
+
+        // Keeps polling the progress while there are active downloads
+        updatingProgress = downloading;
+        if(downloading) handler.postDelayed(progressUpdate, PROGRESS_INTERVAL_MS);
+    }
+
+    private void notifyListeners(Download download) {
+        if(listeners.isEmpty()) return;
+
+        Bundle bundle = toBundle(download);
+        for(Listener listener : listeners) listener.onDownloadChanged(bundle);
+    }
+
+    private Bundle toBundle(Download download) {
+        Bundle bundle = new Bundle();
+        bundle.putString("id", download.request.id);
+        bundle.putString("state", getStateName(download.state));
+        bundle.putDouble("bytes", download.getBytesDownloaded());
+
+        float percent = download.getPercentDownloaded();
+        bundle.putDouble("progress", percent == C.PERCENTAGE_UNSET ? -1 : percent / 100);
+
+        try {
+            bundle.putBundle("track", Utils.fromJson(new JSONObject(new String(download.request.data, UTF_8))));
+        } catch(Exception ex) {
+            // Downloads without the track data are still listed
+        }
+
+        return bundle;
+    }
+
+    private static String getStateName(int state) {
+        switch(state) {
+            case Download.STATE_QUEUED:
+                return "queued";
+            case Download.STATE_DOWNLOADING:
+                return "downloading";
+            case Download.STATE_COMPLETED:
+                return "completed";
+            case Download.STATE_FAILED:
+                return "failed";
+            case Download.STATE_REMOVING:
+                return "removing";
+            case Download.STATE_RESTARTING:
+                return "restarting";
+            default:
+                return "stopped";
+        }
+    }
+
+}
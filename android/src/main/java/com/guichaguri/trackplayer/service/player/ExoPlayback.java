@@ -18,10 +18,10 @@ import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
 import com.guichaguri.trackplayer.service.models.Track;
-import java.util.ArrayList;
+import com.guichaguri.trackplayer.service.models.TrackQueue;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 
 /**
@@ -33,7 +33,7 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
     protected final MusicManager manager;
     protected final T player;
 
-    protected List<Track> queue = Collections.synchronizedList(new ArrayList<>());
+    protected final TrackQueue queue = new TrackQueue();
 
     // https://github.com/google/ExoPlayer/issues/2728
     protected int lastKnownWindow = C.INDEX_UNSET;
@@ -54,27 +54,60 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
         player.addListener(this);
     }
 
-    public List<Track> getQueue() {
-        return queue;
+    /**
+     * Gets an immutable snapshot of the queue, which can be read from any thread
+     * @return The queue
+     */
+    public QueueSnapshot getQueue() {
+        return queue.snapshot();
     }
 
-    public abstract void add(Track track, int index, Promise promise);
+    public void add(Track track, int index, Promise promise) {
+        add(track, index, Utils.toRunnable(promise));
+    }
+
+    public void add(Collection<Track> tracks, int index, Promise promise) {
+        add(tracks, index, Utils.toRunnable(promise));
+    }
 
-    public abstract void add(Collection<Track> tracks, int index, Promise promise);
+    public abstract void add(Track track, int index, Runnable callback);
+
+    public abstract void add(Collection<Track> tracks, int index, Runnable callback);
 
     public abstract void remove(List<Integer> indexes, Promise promise);
 
+    /**
+     * Removes a range of tracks, keeping the current one
+     * @param fromIndex The first index, inclusive
+     * @param toIndex The last index, exclusive
+     * @param promise The promise, resolved when the tracks are removed
+     */
+    public abstract void removeRange(int fromIndex, int toIndex, Promise promise);
+
     public abstract void removeUpcomingTracks();
 
+    /**
+     * Replaces the queue, keeping the tracks that are already in it and the current track
+     * @param tracks The new queue
+     * @param promise The promise, resolved when the queue is updated
+     */
+    public abstract void setQueue(List<Track> tracks, Promise promise);
+
     public void updateTrack(int index, Track track) {
         int currentIndex = player.getCurrentWindowIndex();
 
         queue.set(index, track);
+        queue.commit();
+        manager.onQueueUpdate();
 
         if(currentIndex == index)
             manager.getMetadata().updateMetadata(track);
     }
 
+    public int getCurrentIndex() {
+        return player.getCurrentWindowIndex();
+    }
+
     public Track getCurrentTrack() {
         int index = player.getCurrentWindowIndex();
         return index < 0 || index >= queue.size() ? null : queue.get(index);
@@ -86,18 +119,18 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
             return;
         }
 
-        for(int i = 0; i < queue.size(); i++) {
-            if(id.equals(queue.get(i).id)) {
-                lastKnownWindow = player.getCurrentWindowIndex();
-                lastKnownPosition = player.getCurrentPosition();
+        int index = queue.indexOf(id);
 
-                player.seekToDefaultPosition(i);
-                promise.resolve(null);
-                return;
-            }
+        if(index == -1) {
+            promise.reject("track_not_in_queue", "Given track ID was not found in queue");
+            return;
         }
 
-        promise.reject("track_not_in_queue", "Given track ID was not found in queue");
+        lastKnownWindow = player.getCurrentWindowIndex();
+        lastKnownPosition = player.getCurrentPosition();
+
+        player.seekToDefaultPosition(index);
+        promise.resolve(null);
     }
 
     public void skipToPrevious(Promise promise) {
@@ -186,12 +219,20 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
         player.seekTo(time);
     }
 
+    public void seekTo(int index, long time) {
+        lastKnownWindow = player.getCurrentWindowIndex();
+        lastKnownPosition = player.getCurrentPosition();
+
+        player.seekTo(index, time);
+    }
+
     public float getVolume() {
         return getPlayerVolume() / volumeMultiplier;
     }
 
     public void setVolume(float volume) {
         setPlayerVolume(volume * volumeMultiplier);
+        manager.updateSnapshot();
     }
 
     public void setVolumeMultiplier(float multiplier) {
@@ -335,11 +376,13 @@ public abstract class ExoPlayback<T extends Player> implements EventListener, Me
     @Override
     public void onPlaybackParametersChanged(PlaybackParameters playbackParameters) {
         // Speed or pitch changes
+        manager.updateSnapshot();
     }
 
     @Override
     public void onSeekProcessed() {
         // Finished seeking
+        manager.onSeek();
     }
 
     private void handleId3Metadata(Metadata metadata) {
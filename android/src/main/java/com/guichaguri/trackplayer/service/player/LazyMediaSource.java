@@ -0,0 +1,89 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.source.CompositeMediaSource;
+import com.google.android.exoplayer2.source.MediaPeriod;
+import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.guichaguri.trackplayer.service.models.Track;
+
+/**
+ * A light placeholder for a track that only builds its real media source when it's needed,
+ * either because it's close to the current track or because the player started preparing it.
+ *
+ * @author Guichaguri
+ */
+public class LazyMediaSource extends CompositeMediaSource<Void> {
+
+    private final Context context;
+    private final Track track;
+    private final LocalPlayback playback;
+
+    private MediaSource source;
+    private boolean prepared = false;
+
+    public LazyMediaSource(Context context, Track track, LocalPlayback playback) {
+        this.context = context;
+        this.track = track;
+        this.playback = playback;
+    }
+
+    /**
+     * Builds the real media source, if it wasn't built yet
+     * @return The media source
+     */
+    public synchronized MediaSource materialize() {
+        if(source == null) source = track.toMediaSource(context, playback);
+        return source;
+    }
+
+    /**
+     * Drops the real media source, as long as the player didn't prepare it
+     * @return Whether it was dropped. The player keeps prepared sources until they are removed from the playlist.
+     */
+    public synchronized boolean dematerialize() {
+        if(prepared) return false;
+
+        source = null;
+        return true;
+    }
+
+    @Override
+    public void prepareSourceInternal(@Nullable TransferListener mediaTransferListener) {
+        super.prepareSourceInternal(mediaTransferListener);
+
+        synchronized(this) {
+            prepared = true;
+        }
+
+        prepareChildSource(null, materialize());
+    }
+
+    @Override
+    public void releaseSourceInternal() {
+        super.releaseSourceInternal();
+
+        synchronized(this) {
+            prepared = false;
+        }
+    }
+
+    @Override
+    protected void onChildSourceInfoRefreshed(Void id, MediaSource mediaSource, Timeline timeline, @Nullable Object manifest) {
+        refreshSourceInfo(timeline, manifest);
+    }
+
+    @Override
+    public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator, long startPositionUs) {
+        return materialize().createPeriod(id, allocator, startPositionUs);
+    }
+
+    @Override
+    public void releasePeriod(MediaPeriod mediaPeriod) {
+        materialize().releasePeriod(mediaPeriod);
+    }
+
+}
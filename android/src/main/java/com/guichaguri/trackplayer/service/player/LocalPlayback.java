@@ -1,29 +1,35 @@
 package com.guichaguri.trackplayer.service.player;
 
 import android.content.Context;
+import android.os.Handler;
 import android.util.Log;
 import com.facebook.react.bridge.Promise;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ExoPlaybackException;
 import com.google.android.exoplayer2.Player;
 import com.google.android.exoplayer2.SimpleExoPlayer;
-import com.google.android.exoplayer2.database.DatabaseProvider;
-import com.google.android.exoplayer2.database.ExoDatabaseProvider;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource;
+import com.google.android.exoplayer2.source.ShuffleOrder.DefaultShuffleOrder;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.upstream.DataSource;
-import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
-import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
-import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
-import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
 import com.guichaguri.trackplayer.service.MusicManager;
 import com.guichaguri.trackplayer.service.Utils;
 import com.guichaguri.trackplayer.service.models.Track;
-import java.io.File;
+import com.guichaguri.trackplayer.service.models.TrackType;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import okhttp3.Call;
 
 /**
  * @author Guichaguri
@@ -31,35 +37,231 @@ import java.util.List;
 public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
 
     private final long cacheMaxSize;
-
-    private SimpleCache cache;
+    private final long memoryCacheSize;
+    private final String cachePolicy;
+    private final int lazyLoadWindow;
+    private final Call.Factory httpClient;
+    private final int prefetchCount;
+    private final long prefetchSize;
+    private final CacheKeyFactory cacheKeyFactory;
+    private final DownloadTracker downloads;
+    private final ScoredCacheEvictor.Listener evictionListener;
+    private final Runnable cacheReadyCallback = () -> {
+        Handler handler = manager.getHandler();
+        if(handler != null) handler.post(this::onCacheReady);
+    };
+
+    private CacheManager cacheManager;
+
+    // Lazy sources that were built by the window, so they can be released once they leave it
+    private final Map<LazyMediaSource, Track> materialized = new IdentityHashMap<>();
+
+    // The last track counted as played by the cache
+    private Track lastPlayed;
+    private Cache cache;
+    private MemoryCache memoryCache;
+    private DataSourceRegistry dataSources;
+    private Prefetcher prefetcher;
     private ConcatenatingMediaSource source;
     private boolean prepared = false;
 
-    public LocalPlayback(Context context, MusicManager manager, SimpleExoPlayer player, long maxCacheSize) {
+    public LocalPlayback(Context context, MusicManager manager, SimpleExoPlayer player, long maxCacheSize,
+                         int lazyLoadWindow, Call.Factory httpClient, int prefetchCount, long prefetchSize,
+                         CacheKeyFactory cacheKeyFactory, DownloadTracker downloads, long memoryCacheSize,
+                         String cachePolicy) {
         super(context, manager, player);
         this.cacheMaxSize = maxCacheSize;
+        this.memoryCacheSize = memoryCacheSize;
+        this.cachePolicy = cachePolicy;
+        this.lazyLoadWindow = lazyLoadWindow;
+        this.httpClient = httpClient;
+        this.prefetchCount = prefetchCount;
+        this.prefetchSize = prefetchSize;
+        this.cacheKeyFactory = cacheKeyFactory;
+        this.downloads = downloads;
+        this.evictionListener = manager::onCacheEviction;
     }
 
     @Override
     public void initialize() {
+        memoryCache = memoryCacheSize > 0 ? new MemoryCache(memoryCacheSize) : null;
+
         if(cacheMaxSize > 0) {
-            File cacheDir = new File(context.getCacheDir(), "TrackPlayer");
-            DatabaseProvider db = new ExoDatabaseProvider(context);
-            cache = new SimpleCache(cacheDir, new LeastRecentlyUsedCacheEvictor(cacheMaxSize), db);
+            cacheManager = CacheManager.getInstance(context);
+            cacheManager.open(cacheMaxSize, cacheKeyFactory, cachePolicy, evictionListener);
+            cache = cacheManager.getCache();
         } else {
+            cacheManager = null;
             cache = null;
         }
 
+        createDataSources();
+
+        // Tracks played before the cache is opened are read without it
+        if(cacheManager != null && cache == null) cacheManager.whenReady(cacheReadyCallback);
+
         super.initialize();
 
         resetQueue();
     }
 
-    public DataSource.Factory enableCaching(DataSource.Factory ds) {
-        if(cache == null || cacheMaxSize <= 0) return ds;
+    private void createDataSources() {
+        dataSources = new DataSourceRegistry(context, cache, httpClient, cacheKeyFactory, downloads, memoryCache);
 
-        return new CacheDataSourceFactory(cache, ds, CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR);
+        if(cache != null && prefetchCount > 0 && prefetchSize > 0) {
+            // The player takes priority over the prefetcher while it's loading
+            PriorityTaskManager priorityTaskManager = new PriorityTaskManager();
+            player.setPriorityTaskManager(priorityTaskManager);
+            prefetcher = new Prefetcher(this, cache, cacheKeyFactory, priorityTaskManager, prefetchSize);
+        } else {
+            prefetcher = null;
+        }
+    }
+
+    private void onCacheReady() {
+        if(cacheManager == null || cache != null) return;
+
+        cache = cacheManager.getCache();
+
+        // The media sources created from now on will use the cache
+        dataSources.clear();
+        createDataSources();
+        updatePrefetch();
+    }
+
+    /**
+     * Gets the cache manager
+     * @return The cache manager or null if caching is disabled
+     */
+    public CacheManager getCacheManager() {
+        return cacheManager;
+    }
+
+    /**
+     * Gets the key the track is cached with
+     * @param track The track
+     * @return The cache key
+     */
+    public String getCacheKey(Track track) {
+        return cacheKeyFactory.buildCacheKey(new DataSpec(track.uri, 0, C.LENGTH_UNSET, track.cacheKey));
+    }
+
+    /**
+     * Checks whether a track can be played from the downloads
+     * @param track The track
+     * @return Whether the track was fully downloaded
+     */
+    public boolean isDownloaded(Track track) {
+        return downloads != null && downloads.isDownloaded(track, getCacheKey(track));
+    }
+
+    /**
+     * Gets the data source factory for a track, which is shared with other tracks with the same settings
+     * @param track The track
+     * @return The factory
+     */
+    public DataSource.Factory getDataSourceFactory(Track track) {
+        return dataSources.get(track);
+    }
+
+    /**
+     * Gets the data source factory for a track, skipping the memory cache
+     * @param track The track
+     * @return The factory
+     */
+    public DataSource.Factory getPersistentDataSourceFactory(Track track) {
+        return dataSources.getPersistent(track);
+    }
+
+    /**
+     * Releases memory from the memory cache
+     * @param level The level from {@link android.content.ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public void onTrimMemory(int level) {
+        if(memoryCache != null) memoryCache.trim(level);
+    }
+
+    private MediaSource createMediaSource(Track track) {
+        if(lazyLoadWindow > 0) return new LazyMediaSource(context, track, this);
+        return track.toMediaSource(context, this);
+    }
+
+    /**
+     * Builds the media sources of the tracks around the current one when lazy loading is enabled,
+     * and releases the ones that left the window, so memory doesn't grow with every visited track
+     */
+    private void materializeWindow() {
+        if(lazyLoadWindow <= 0) return;
+
+        int current = Math.max(player.getCurrentWindowIndex(), 0);
+        int from = Math.max(current - lazyLoadWindow, 0);
+        int to = Math.min(current + lazyLoadWindow, source.getSize() - 1);
+
+        for(int i = from; i <= to; i++) {
+            MediaSource ms = source.getMediaSource(i);
+
+            if(ms instanceof LazyMediaSource) {
+                ((LazyMediaSource)ms).materialize();
+                materialized.put((LazyMediaSource)ms, queue.get(i));
+            }
+        }
+
+        Iterator<Map.Entry<LazyMediaSource, Track>> it = materialized.entrySet().iterator();
+
+        while(it.hasNext()) {
+            Map.Entry<LazyMediaSource, Track> entry = it.next();
+            int index = queue.indexOf(entry.getValue().id);
+            if(index >= from && index <= to) continue;
+
+            it.remove();
+
+            // Skips tracks that were removed or replaced
+            if(index == -1 || source.getMediaSource(index) != entry.getKey()) continue;
+
+            if(!entry.getKey().dematerialize()) {
+                // The player keeps the sources it prepared, so it's swapped for a new placeholder.
+                // Both changes are applied in the same timeline update, keeping the current window index.
+                source.removeMediaSource(index);
+                source.addMediaSource(index, createMediaSource(entry.getValue()));
+            }
+        }
+    }
+
+    /**
+     * Reports the current track to the cache once it changes, as reads from the cache don't count as plays
+     */
+    private void recordPlay() {
+        Track track = getCurrentTrack();
+        if(track == lastPlayed) return;
+
+        lastPlayed = track;
+
+        if(track != null && cacheManager != null && track.type == TrackType.DEFAULT &&
+                track.resourceId == 0 && !Utils.isLocal(track.uri)) {
+            cacheManager.recordPlay(track);
+        }
+    }
+
+    private void onQueueUpdate() {
+        queue.commit();
+        updatePrefetch();
+        manager.onQueueUpdate();
+    }
+
+    /**
+     * Restarts prefetching the upcoming tracks, as long as the player isn't loading the current one
+     */
+    private void updatePrefetch() {
+        if(prefetcher == null) return;
+
+        prefetcher.cancel();
+        if(player.isLoading()) return;
+
+        int from = player.getCurrentWindowIndex() + 1;
+        int to = Math.min(from + prefetchCount, queue.size());
+        if(from < 0 || from >= to) return;
+
+        prefetcher.start(new ArrayList<>(queue.subList(from, to)));
     }
 
     private void prepare() {
@@ -71,58 +273,199 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
     }
 
     @Override
-    public void add(Track track, int index, Promise promise) {
+    public void add(Track track, int index, Runnable callback) {
         queue.add(index, track);
-        MediaSource trackSource = track.toMediaSource(context, this);
-        source.addMediaSource(index, trackSource, manager.getHandler(), Utils.toRunnable(promise));
+        MediaSource trackSource = createMediaSource(track);
+        source.addMediaSource(index, trackSource, manager.getHandler(), callback);
 
         prepare();
+        materializeWindow();
+        onQueueUpdate();
     }
 
     @Override
-    public void add(Collection<Track> tracks, int index, Promise promise) {
+    public void add(Collection<Track> tracks, int index, Runnable callback) {
         List<MediaSource> trackList = new ArrayList<>();
 
         for(Track track : tracks) {
-            trackList.add(track.toMediaSource(context, this));
+            trackList.add(createMediaSource(track));
         }
 
         queue.addAll(index, tracks);
-        source.addMediaSources(index, trackList, manager.getHandler(), Utils.toRunnable(promise));
+        source.addMediaSources(index, trackList, manager.getHandler(), callback);
 
         prepare();
+        materializeWindow();
+        onQueueUpdate();
     }
 
     @Override
     public void remove(List<Integer> indexes, Promise promise) {
         int currentIndex = player.getCurrentWindowIndex();
 
-        // Sort the list so we can loop through sequentially
+        // Sort the list so we can merge the indexes into contiguous ranges
         Collections.sort(indexes);
 
-        for(int i = indexes.size() - 1; i >= 0; i--) {
-            int index = indexes.get(i);
+        List<int[]> ranges = new ArrayList<>();
+        int from = -1, to = -1;
 
+        for(int index : indexes) {
             // Skip indexes that are the current track or are out of bounds
-            if(index == currentIndex || index < 0 || index >= queue.size()) {
-                // Resolve the promise when the last index is invalid
-                if(i == 0) promise.resolve(null);
-                continue;
+            if(index == currentIndex || index < 0 || index >= queue.size()) continue;
+
+            if(from != -1 && index <= to) continue; // Duplicated index
+
+            if(from != -1 && index == to + 1) {
+                to = index;
+            } else {
+                if(from != -1) ranges.add(new int[]{from, to + 1});
+                from = to = index;
             }
+        }
+
+        if(from != -1) ranges.add(new int[]{from, to + 1});
 
-            queue.remove(index);
+        if(ranges.isEmpty()) {
+            promise.resolve(null);
+            return;
+        }
+
+        // Remove the ranges backwards so the indexes of the remaining ones stay valid.
+        // Only the last operation needs a callback, as they are applied in order
+        for(int i = ranges.size() - 1; i >= 0; i--) {
+            int[] range = ranges.get(i);
+            removeTracks(range[0], range[1], i == 0 ? Utils.toRunnable(promise) : null);
+        }
+
+        onQueueUpdate();
+    }
+
+    @Override
+    public void removeRange(int fromIndex, int toIndex, Promise promise) {
+        int currentIndex = player.getCurrentWindowIndex();
 
-            if(i == 0) {
-                source.removeMediaSource(index, manager.getHandler(), Utils.toRunnable(promise));
+        fromIndex = Math.max(fromIndex, 0);
+        toIndex = Math.min(toIndex, queue.size());
+
+        if(currentIndex >= fromIndex && currentIndex < toIndex) {
+            // The current track is kept, so the range is split in two.
+            // The callback goes to the last range that is actually removed, as an empty one would run it right away
+            boolean hasBefore = fromIndex < currentIndex;
+            removeTracks(currentIndex + 1, toIndex, hasBefore ? null : Utils.toRunnable(promise));
+            removeTracks(fromIndex, currentIndex, hasBefore ? Utils.toRunnable(promise) : null);
+        } else {
+            removeTracks(fromIndex, toIndex, Utils.toRunnable(promise));
+        }
+
+        onQueueUpdate();
+    }
+
+    @Override
+    public void setQueue(List<Track> tracks, Promise promise) {
+        Track current = getCurrentTrack();
+        Track lastKnown = lastKnownWindow >= 0 && lastKnownWindow < queue.size() ? queue.get(lastKnownWindow) : null;
+        List<SourceEdit> edits = new ArrayList<>();
+
+        // Builds the new queue, reusing the tracks that are already in it.
+        // The current track is never replaced, and is kept in front when it's not in the new queue
+        List<Track> target = new ArrayList<>(tracks.size() + 1);
+        Set<Track> retained = new HashSet<>();
+        List<Track> updated = new ArrayList<>();
+
+        if(current != null && !containsId(tracks, current.id)) {
+            target.add(current);
+            retained.add(current);
+        }
+
+        for(Track track : tracks) {
+            Track existing = queue.getById(track.id);
+
+            if(existing != null && (existing == current || existing.uri.equals(track.uri))) {
+                existing.setMetadata(context, track.getOriginalItem(), manager.getMetadata().getRatingType());
+                target.add(existing);
+                retained.add(existing);
+                updated.add(existing);
             } else {
-                source.removeMediaSource(index);
+                target.add(track);
             }
+        }
+
+        // Removes the tracks that are not retained, merging them into ranges
+        for(int i = queue.size() - 1; i >= 0; i--) {
+            if(retained.contains(queue.get(i))) continue;
+
+            int to = i + 1;
+            while(i > 0 && !retained.contains(queue.get(i - 1))) i--;
+
+            final int from = i;
+            queue.removeRange(from, to);
+            edits.add((handler, callback) -> source.removeMediaSourceRange(from, to, handler, callback));
+        }
+
+        // The longest sequence of retained tracks that is already in order doesn't need to be moved
+        int[] positions = new int[retained.size()];
+        int count = 0;
+
+        for(Track track : target) {
+            if(retained.contains(track)) positions[count++] = queue.indexOf(track.id);
+        }
+
+        Set<Track> stable = new HashSet<>();
+        for(int position : longestIncreasingSubsequence(positions)) stable.add(queue.get(position));
+
+        // Moves the remaining retained tracks and inserts the new ones right after their predecessor
+        for(int i = 0; i < target.size(); i++) {
+            Track track = target.get(i);
+            if(stable.contains(track)) continue;
+
+            int index = i == 0 ? 0 : queue.indexOf(target.get(i - 1).id) + 1;
+
+            if(retained.contains(track)) {
+                int from = queue.indexOf(track.id);
+                if(from < index) index--;
+                if(from == index) continue;
 
-            // Fix the window index
-            if (index < lastKnownWindow) {
-                lastKnownWindow--;
+                final int to = index;
+                queue.move(from, to);
+                edits.add((handler, callback) -> source.moveMediaSource(from, to, handler, callback));
+            } else {
+                // Inserts all consecutive new tracks at once
+                int end = i + 1;
+                while(end < target.size() && !retained.contains(target.get(end))) end++;
+
+                List<Track> inserted = target.subList(i, end);
+                List<MediaSource> sources = new ArrayList<>(inserted.size());
+                for(Track t : inserted) sources.add(createMediaSource(t));
+
+                final int to = index;
+                queue.addAll(to, inserted);
+                edits.add((handler, callback) -> source.addMediaSources(to, sources, handler, callback));
+                i = end - 1;
             }
         }
+
+        // The kept tracks are updated in place, so they're set again to publish their new metadata
+        for(Track track : updated) {
+            queue.set(queue.indexOf(track.id), track);
+            if(track == current) manager.getMetadata().updateMetadata(track);
+        }
+
+        // Applies all edits, the last one resolves the promise
+        for(int i = 0; i < edits.size(); i++) {
+            boolean last = i == edits.size() - 1;
+            edits.get(i).apply(last ? manager.getHandler() : null, last ? Utils.toRunnable(promise) : null);
+        }
+
+        if(edits.isEmpty()) promise.resolve(null);
+
+        if(lastKnown != null) {
+            int index = queue.indexOf(lastKnown.id);
+            lastKnownWindow = index == -1 ? C.INDEX_UNSET : index;
+        }
+
+        if(!queue.isEmpty()) prepare();
+        materializeWindow();
+        onQueueUpdate();
     }
 
     @Override
@@ -130,16 +473,79 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         int currentIndex = player.getCurrentWindowIndex();
         if (currentIndex == C.INDEX_UNSET) return;
 
-        for (int i = queue.size() - 1; i > currentIndex; i--) {
-            queue.remove(i);
-            source.removeMediaSource(i);
+        removeTracks(currentIndex + 1, queue.size(), null);
+        onQueueUpdate();
+    }
+
+    private void removeTracks(int fromIndex, int toIndex, Runnable callback) {
+        if(fromIndex >= toIndex) {
+            if(callback != null) callback.run();
+            return;
+        }
+
+        queue.removeRange(fromIndex, toIndex);
+
+        if(callback != null) {
+            source.removeMediaSourceRange(fromIndex, toIndex, manager.getHandler(), callback);
+        } else {
+            source.removeMediaSourceRange(fromIndex, toIndex);
+        }
+
+        // Fix the window index
+        if(fromIndex < lastKnownWindow) {
+            lastKnownWindow -= Math.min(toIndex, lastKnownWindow) - fromIndex;
+        }
+    }
+
+    private static boolean containsId(List<Track> tracks, String id) {
+        for(Track track : tracks) {
+            if(track.id.equals(id)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the longest increasing subsequence
+     * @param values Distinct values
+     * @return The values that are part of the subsequence
+     */
+    private static Set<Integer> longestIncreasingSubsequence(int[] values) {
+        int[] tails = new int[values.length];
+        int[] previous = new int[values.length];
+        int length = 0;
+
+        for(int i = 0; i < values.length; i++) {
+            // Binary search for the longest subsequence that can be extended by this value
+            int low = 0, high = length;
+            while(low < high) {
+                int mid = (low + high) >>> 1;
+                if(values[tails[mid]] < values[i]) low = mid + 1;
+                else high = mid;
+            }
+
+            previous[i] = low > 0 ? tails[low - 1] : -1;
+            tails[low] = i;
+            if(low == length) length++;
+        }
+
+        Set<Integer> result = new HashSet<>();
+        for(int i = length > 0 ? tails[length - 1] : -1; i != -1; i = previous[i]) {
+            result.add(values[i]);
         }
+        return result;
+    }
+
+    private interface SourceEdit {
+        void apply(Handler handler, Runnable callback);
     }
 
     private void resetQueue() {
         queue.clear();
+        materialized.clear();
+        lastPlayed = null;
 
-        source = new ConcatenatingMediaSource();
+        // Lazy loaded tracks are only prepared when the player needs them
+        source = new ConcatenatingMediaSource(false, lazyLoadWindow > 0, new DefaultShuffleOrder(0));
         player.prepare(source, true, true);
         prepared = false; // We set it to false as the queue is now empty
 
@@ -147,6 +553,7 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         lastKnownPosition = C.POSITION_UNSET;
 
         manager.onReset();
+        onQueueUpdate();
     }
 
     @Override
@@ -188,6 +595,22 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
         player.setVolume(volume);
     }
 
+    @Override
+    public void onPositionDiscontinuity(int reason) {
+        super.onPositionDiscontinuity(reason);
+        recordPlay();
+        materializeWindow();
+        updatePrefetch();
+    }
+
+    @Override
+    public void onLoadingChanged(boolean isLoading) {
+        super.onLoadingChanged(isLoading);
+
+        // Prefetches once the current track is buffered
+        if(!isLoading) updatePrefetch();
+    }
+
     @Override
     public void onPlayerStateChanged(boolean playWhenReady, int playbackState) {
         if(playbackState == Player.STATE_ENDED) {
@@ -207,13 +630,17 @@ public class LocalPlayback extends ExoPlayback<SimpleExoPlayer> {
     public void destroy() {
         super.destroy();
 
-        if(cache != null) {
-            try {
-                cache.release();
-                cache = null;
-            } catch(Exception ex) {
-                Log.w(Utils.LOG, "Couldn't release the cache properly", ex);
-            }
+        if(prefetcher != null) prefetcher.destroy();
+        if(dataSources != null) dataSources.clear();
+        if(memoryCache != null) memoryCache.clear();
+
+        // The cache is kept open for the next player
+        if(cacheManager != null) {
+            cacheManager.cancelWhenReady(cacheReadyCallback);
+            cacheManager.removeListener(evictionListener);
+            cacheManager.flush();
+            cacheManager = null;
+            cache = null;
         }
     }
 
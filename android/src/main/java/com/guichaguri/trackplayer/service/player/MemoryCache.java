@@ -0,0 +1,174 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.ComponentCallbacks2;
+import com.google.android.exoplayer2.C;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded in-memory cache of recently read media, split in fixed size blocks.
+ *
+ * Blocks are evicted in least recently used order, and their byte arrays are pooled to avoid allocations.
+ * The cache shrinks itself when the system is running low on memory.
+ *
+ * @author Guichaguri
+ */
+public class MemoryCache {
+
+    public static final int BLOCK_SIZE = 64 * 1024;
+
+    // Content lengths are tiny, but are limited so they don't pile up in long sessions
+    private static final int MAX_CONTENT_LENGTHS = 256;
+
+    private final long maxBytes;
+    private final LinkedHashMap<BlockKey, Block> blocks = new LinkedHashMap<>(16, 0.75F, true);
+    private final ArrayDeque<byte[]> pool = new ArrayDeque<>();
+    private final LinkedHashMap<String, Long> contentLengths = new LinkedHashMap<String, Long>(16, 0.75F, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > MAX_CONTENT_LENGTHS;
+        }
+    };
+
+    private long size = 0;
+
+    public MemoryCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets a byte array with {@link #BLOCK_SIZE} bytes, reusing a pooled one if possible
+     */
+    public synchronized byte[] obtain() {
+        byte[] data = pool.poll();
+        return data != null ? data : new byte[BLOCK_SIZE];
+    }
+
+    /**
+     * Gives back an array that wasn't stored in the cache
+     */
+    public synchronized void recycle(byte[] data) {
+        if(size + (pool.size() + 1L) * BLOCK_SIZE <= maxBytes) pool.push(data);
+    }
+
+    /**
+     * Stores a block, taking the ownership of its array
+     * @param key The cache key
+     * @param index The block index
+     * @param data The array obtained through {@link #obtain()}
+     * @param length The amount of valid bytes
+     * @param last Whether this is the last block of the content
+     */
+    public synchronized void put(String key, long index, byte[] data, int length, boolean last) {
+        if(maxBytes < BLOCK_SIZE) return;
+
+        Block previous = blocks.remove(new BlockKey(key, index));
+        if(previous != null) {
+            size -= BLOCK_SIZE;
+            pool.push(previous.data);
+        }
+
+        evict(maxBytes - BLOCK_SIZE);
+
+        blocks.put(new BlockKey(key, index), new Block(data, length, last));
+        size += BLOCK_SIZE;
+    }
+
+    public synchronized boolean contains(String key, long index) {
+        return blocks.containsKey(new BlockKey(key, index));
+    }
+
+    /**
+     * Copies data from a block
+     * @return The amount of bytes copied, 0 if the data isn't in the cache
+     *         or {@link C#RESULT_END_OF_INPUT} if the offset is past the end of the content
+     */
+    public synchronized int read(String key, long index, int offset, byte[] buffer, int bufferOffset, int length) {
+        Block block = blocks.get(new BlockKey(key, index));
+        if(block == null) return 0;
+        if(offset >= block.length) return block.last ? C.RESULT_END_OF_INPUT : 0;
+
+        int read = Math.min(length, block.length - offset);
+        System.arraycopy(block.data, offset, buffer, bufferOffset, read);
+        return read;
+    }
+
+    public synchronized long getContentLength(String key) {
+        Long length = contentLengths.get(key);
+        return length != null ? length : C.LENGTH_UNSET;
+    }
+
+    public synchronized void setContentLength(String key, long length) {
+        contentLengths.put(key, length);
+    }
+
+    /**
+     * Releases memory based on how much the system needs it
+     * @param level The level from {@link ComponentCallbacks2#onTrimMemory(int)}
+     */
+    public synchronized void trim(int level) {
+        if(level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            clear();
+        } else if(level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            pool.clear();
+            evict(size / 2);
+        }
+    }
+
+    public synchronized void clear() {
+        blocks.clear();
+        pool.clear();
+        size = 0;
+    }
+
+    private void evict(long targetSize) {
+        Iterator<Block> it = blocks.values().iterator();
+
+        while(size > targetSize && it.hasNext()) {
+            Block block = it.next();
+            it.remove();
+            size -= BLOCK_SIZE;
+
+            if(size + (pool.size() + 1L) * BLOCK_SIZE <= maxBytes) pool.push(block.data);
+        }
+    }
+
+    private static final class Block {
+        final byte[] data;
+        final int length;
+        final boolean last;
+
+        Block(byte[] data, int length, boolean last) {
+            this.data = data;
+            this.length = length;
+            this.last = last;
+        }
+    }
+
+    private static final class BlockKey {
+        final String key;
+        final long index;
+
+        BlockKey(String key, long index) {
+            this.key = key;
+            this.index = index;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) return true;
+            if(!(o instanceof BlockKey)) return false;
+
+            BlockKey other = (BlockKey)o;
+            return index == other.index && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + (int)(index ^ (index >>> 32));
+        }
+    }
+
+}
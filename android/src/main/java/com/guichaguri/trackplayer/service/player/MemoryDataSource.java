@@ -0,0 +1,198 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Serves recently read data from a {@link MemoryCache}, only reading from the upstream what's missing.
+ *
+ * Data read from the upstream is stored in the memory cache when it covers a whole block,
+ * or the last block of the content.
+ *
+ * @author Guichaguri
+ */
+public class MemoryDataSource implements DataSource {
+
+    private static final int BLOCK_SIZE = MemoryCache.BLOCK_SIZE;
+
+    private final DataSource upstream;
+    private final MemoryCache memory;
+    private final CacheKeyFactory cacheKeyFactory;
+
+    private DataSpec dataSpec;
+    private String key;
+    private Uri uri;
+    private long position;
+    private long bytesRemaining;
+    private boolean upstreamOpen = false;
+
+    // The block being filled with the upstream data
+    private byte[] block;
+    private long blockIndex;
+    private int blockLength;
+
+    public MemoryDataSource(DataSource upstream, MemoryCache memory, CacheKeyFactory cacheKeyFactory) {
+        this.upstream = upstream;
+        this.memory = memory;
+        this.cacheKeyFactory = cacheKeyFactory;
+    }
+
+    @Override
+    public void addTransferListener(TransferListener transferListener) {
+        upstream.addTransferListener(transferListener);
+    }
+
+    @Override
+    public long open(DataSpec dataSpec) throws IOException {
+        this.dataSpec = dataSpec;
+        this.key = cacheKeyFactory.buildCacheKey(dataSpec);
+        this.uri = dataSpec.uri;
+        this.position = dataSpec.position;
+        this.bytesRemaining = dataSpec.length;
+
+        if(bytesRemaining == C.LENGTH_UNSET) {
+            long length = memory.getContentLength(key);
+
+            if(length != C.LENGTH_UNSET) {
+                bytesRemaining = Math.max(0, length - position);
+            } else {
+                // The length is unknown, so we have to ask the upstream
+                openUpstream();
+            }
+        }
+
+        return bytesRemaining;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int readLength) throws IOException {
+        if(readLength == 0) return 0;
+        if(bytesRemaining == 0) return C.RESULT_END_OF_INPUT;
+        if(bytesRemaining != C.LENGTH_UNSET) readLength = (int)Math.min(readLength, bytesRemaining);
+
+        long index = position / BLOCK_SIZE;
+        int blockOffset = (int)(position % BLOCK_SIZE);
+
+        if(!upstreamOpen) {
+            int read = memory.read(key, index, blockOffset, buffer, offset, readLength);
+
+            if(read == C.RESULT_END_OF_INPUT) {
+                bytesRemaining = 0;
+                return C.RESULT_END_OF_INPUT;
+            } else if(read > 0) {
+                advance(read);
+                return read;
+            }
+
+            openUpstream();
+        }
+
+        // Reads up to the end of the block, so it can be stored
+        int read = upstream.read(buffer, offset, Math.min(readLength, BLOCK_SIZE - blockOffset));
+
+        if(read == C.RESULT_END_OF_INPUT) {
+            // The last block is stored only if the whole content was requested
+            commitBlock(dataSpec.length == C.LENGTH_UNSET);
+            return C.RESULT_END_OF_INPUT;
+        }
+
+        if(block != null) {
+            System.arraycopy(buffer, offset, block, blockLength, read);
+            blockLength += read;
+        }
+
+        advance(read);
+
+        if(position % BLOCK_SIZE == 0) {
+            commitBlock(false);
+
+            if(memory.contains(key, position / BLOCK_SIZE)) {
+                // The next block is already in memory, so we don't need the upstream for now
+                closeUpstream();
+            } else {
+                startBlock();
+            }
+        } else if(block != null && position == memory.getContentLength(key)) {
+            commitBlock(true);
+        }
+
+        return read;
+    }
+
+    @Nullable
+    @Override
+    public Uri getUri() {
+        return uri;
+    }
+
+    @Override
+    public Map<String, List<String>> getResponseHeaders() {
+        return upstream.getResponseHeaders();
+    }
+
+    @Override
+    public void close() throws IOException {
+        dataSpec = null;
+
+        if(block != null) {
+            memory.recycle(block);
+            block = null;
+        }
+
+        closeUpstream();
+    }
+
+    private void openUpstream() throws IOException {
+        long length = upstream.open(dataSpec.subrange(position - dataSpec.position));
+        upstreamOpen = true;
+
+        Uri upstreamUri = upstream.getUri();
+        if(upstreamUri != null) uri = upstreamUri;
+
+        if(length != C.LENGTH_UNSET) {
+            if(dataSpec.length == C.LENGTH_UNSET) memory.setContentLength(key, position + length);
+            if(bytesRemaining == C.LENGTH_UNSET) bytesRemaining = length;
+        }
+
+        // Blocks can only be stored when they're read from the beginning
+        if(position % BLOCK_SIZE == 0 && !memory.contains(key, position / BLOCK_SIZE)) startBlock();
+    }
+
+    private void closeUpstream() throws IOException {
+        if(!upstreamOpen) return;
+        upstreamOpen = false;
+        upstream.close();
+    }
+
+    private void startBlock() {
+        block = memory.obtain();
+        blockIndex = position / BLOCK_SIZE;
+        blockLength = 0;
+    }
+
+    private void commitBlock(boolean last) {
+        if(block == null) return;
+
+        if(blockLength == BLOCK_SIZE || (last && blockLength > 0)) {
+            memory.put(key, blockIndex, block, blockLength, last);
+        } else {
+            memory.recycle(block);
+        }
+
+        block = null;
+    }
+
+    private void advance(int read) {
+        position += read;
+        if(bytesRemaining != C.LENGTH_UNSET) bytesRemaining -= read;
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.os.Process;
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheUtil;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.Track;
+import com.guichaguri.trackplayer.service.models.TrackType;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Downloads the beginning of the upcoming tracks into the cache, so track transitions don't start from nothing.
+ *
+ * Prefetching runs with a lower priority than the playback, so it's paused while the player is loading.
+ *
+ * @author Guichaguri
+ */
+public class Prefetcher {
+
+    private final LocalPlayback playback;
+    private final Cache cache;
+    private final CacheKeyFactory cacheKeyFactory;
+    private final PriorityTaskManager priorityTaskManager;
+    private final long bytes;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "TrackPlayer-Prefetcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private AtomicBoolean canceled = new AtomicBoolean(true);
+    private Future<?> task;
+
+    /**
+     * @param playback The playback, used to get the data source factories
+     * @param cache The cache that will receive the data
+     * @param cacheKeyFactory The factory that builds the cache keys, same as the one used by the player
+     * @param priorityTaskManager The task manager shared with the player
+     * @param bytes The amount of bytes prefetched from each track
+     */
+    public Prefetcher(LocalPlayback playback, Cache cache, CacheKeyFactory cacheKeyFactory,
+                      PriorityTaskManager priorityTaskManager, long bytes) {
+        this.playback = playback;
+        this.cache = cache;
+        this.cacheKeyFactory = cacheKeyFactory;
+        this.priorityTaskManager = priorityTaskManager;
+        this.bytes = bytes;
+    }
+
+    /**
+     * Cancels the current prefetching and starts prefetching the given tracks
+     * @param tracks The upcoming tracks, which must not change anymore
+     */
+    public void start(List<Track> tracks) {
+        cancel();
+
+        AtomicBoolean canceled = new AtomicBoolean(false);
+        this.canceled = canceled;
+
+        task = executor.submit(() -> {
+            byte[] buffer = new byte[CacheUtil.DEFAULT_BUFFER_SIZE_BYTES];
+
+            // Registers the priority, so CacheUtil only waits while the player is loading
+            priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+
+            try {
+                for(Track track : tracks) {
+                    if(canceled.get()) return;
+                    if(!canPrefetch(track)) continue;
+
+                    DataSource dataSource = playback.getPersistentDataSourceFactory(track).createDataSource();
+                    if(!(dataSource instanceof CacheDataSource)) continue;
+
+                    try {
+                        CacheUtil.cache(new DataSpec(track.uri, 0, bytes, track.cacheKey), cache, cacheKeyFactory,
+                                (CacheDataSource)dataSource, buffer, priorityTaskManager, C.PRIORITY_DOWNLOAD,
+                                null, canceled, false);
+                    } catch(InterruptedException ex) {
+                        // Canceled
+                        return;
+                    } catch(Exception ex) {
+                        if(canceled.get()) return;
+                        Log.w(Utils.LOG, "Couldn't prefetch " + track.id, ex);
+                    }
+                }
+            } finally {
+                priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
+            }
+        });
+    }
+
+    /**
+     * Cancels the current prefetching, interrupting it if it's waiting for the player
+     */
+    public void cancel() {
+        canceled.set(true);
+        if(task != null) task.cancel(true);
+    }
+
+    public void destroy() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private boolean canPrefetch(Track track) {
+        // Only progressive remote tracks are prefetched, as streams would need their playlists parsed first
+        // Downloaded tracks don't need it either
+        return track.type == TrackType.DEFAULT && track.resourceId == 0 && !Utils.isLocal(track.uri) &&
+                !playback.isDownloaded(track);
+    }
+
+}
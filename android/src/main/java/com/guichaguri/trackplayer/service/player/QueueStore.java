@@ -0,0 +1,225 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.Process;
+import android.util.Log;
+import com.guichaguri.trackplayer.service.Utils;
+import com.guichaguri.trackplayer.service.models.QueueSnapshot;
+import com.guichaguri.trackplayer.service.models.Track;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.json.JSONObject;
+
+/**
+ * Persists the queue and the playback position, so they can be restored when the service is recreated.
+ *
+ * The file starts with a fixed size header containing the playback position, which is updated in place.
+ * The tracks follow the header, and are only written again when the queue changes.
+ * Writes are batched and done in a background thread.
+ *
+ * @author Guichaguri
+ */
+public class QueueStore {
+
+    public interface RestoreCallback {
+        void onRestored(List<Track> tracks, int index, long position, float rate);
+    }
+
+    private static final int MAGIC = 0x54505131; // TPQ1
+    private static final int HEADER_POSITION_OFFSET = 4;
+    private static final long WRITE_DELAY_MS = 500;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final File file;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            r.run();
+        }, "TrackPlayer-QueueStore");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Object lock = new Object();
+    private QueueSnapshot pendingQueue;
+    private int pendingIndex;
+    private long pendingPosition;
+    private float pendingRate = 1;
+    private boolean scheduled = false;
+    private boolean restoring = false;
+
+    private long writtenVersion = -1;
+
+    /**
+     * Deletes the saved queue. Must not be used while a store is saving it, use {@link #clear()} instead.
+     */
+    public static void delete(Context context) {
+        File file = getFile(context);
+        if(file.exists() && !file.delete()) Log.w(Utils.LOG, "Couldn't delete " + file);
+    }
+
+    private static File getFile(Context context) {
+        return new File(new File(context.getFilesDir(), "TrackPlayer"), "queue.bin");
+    }
+
+    public QueueStore(Context context) {
+        this.file = getFile(context);
+    }
+
+    /**
+     * Schedules a checkpoint. Multiple checkpoints in a short interval are written only once.
+     */
+    public void save(QueueSnapshot queue, int index, long position, float rate) {
+        synchronized(lock) {
+            if(restoring) return;
+
+            pendingQueue = queue;
+            pendingIndex = index;
+            pendingPosition = position;
+            pendingRate = rate;
+
+            if(scheduled) return;
+            scheduled = true;
+        }
+
+        executor.schedule(this::write, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Reads the last checkpoint in the background
+     * @param context The context used to create the tracks
+     * @param ratingType The rating type
+     * @param callback Called in the background thread with the restored queue, or an empty one
+     */
+    public void restore(Context context, int ratingType, RestoreCallback callback) {
+        synchronized(lock) {
+            // Drops pending checkpoints, as they would overwrite the queue we're about to restore
+            restoring = true;
+            pendingQueue = null;
+        }
+
+        executor.execute(() -> {
+            List<Track> tracks = new ArrayList<>();
+            int index = 0;
+            long position = 0;
+            float rate = 1;
+
+            if(file.exists()) {
+                try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                    if(in.readInt() != MAGIC) throw new IOException("Invalid queue file");
+
+                    index = in.readInt();
+                    position = in.readLong();
+                    rate = in.readFloat();
+                    int count = in.readInt();
+
+                    for(int i = 0; i < count; i++) {
+                        byte[] data = new byte[in.readInt()];
+                        in.readFully(data);
+
+                        Bundle bundle = Utils.fromJson(new JSONObject(new String(data, UTF_8)));
+                        tracks.add(new Track(context, bundle, ratingType));
+                    }
+                } catch(Exception ex) {
+                    Log.w(Utils.LOG, "Couldn't restore the queue", ex);
+                    tracks.clear();
+                }
+            }
+
+            synchronized(lock) {
+                restoring = false;
+            }
+
+            callback.onRestored(tracks, index, position, rate);
+        });
+    }
+
+    /**
+     * Drops the pending checkpoint and deletes the saved queue in the background
+     */
+    public void clear() {
+        synchronized(lock) {
+            pendingQueue = null;
+        }
+
+        executor.execute(() -> {
+            if(file.exists() && !file.delete()) Log.w(Utils.LOG, "Couldn't delete " + file);
+            writtenVersion = -1;
+        });
+    }
+
+    public void destroy() {
+        executor.shutdown();
+    }
+
+    private void write() {
+        QueueSnapshot queue;
+        int index;
+        long position;
+        float rate;
+
+        synchronized(lock) {
+            queue = pendingQueue;
+            index = pendingIndex;
+            position = pendingPosition;
+            rate = pendingRate;
+            scheduled = false;
+        }
+
+        if(queue == null) return;
+
+        try {
+            if(queue.getVersion() == writtenVersion && file.exists()) {
+                // Only the position changed, so we'll just update the header
+                try(RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    raf.seek(HEADER_POSITION_OFFSET);
+                    raf.writeInt(index);
+                    raf.writeLong(position);
+                    raf.writeFloat(rate);
+                }
+                return;
+            }
+
+            File dir = file.getParentFile();
+            if(!dir.exists() && !dir.mkdirs()) throw new IOException("Couldn't create " + dir);
+
+            File temp = new File(dir, file.getName() + ".tmp");
+
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(index);
+                out.writeLong(position);
+                out.writeFloat(rate);
+                out.writeInt(queue.size());
+
+                for(Track track : queue) {
+                    byte[] data = track.toJson().getBytes(UTF_8);
+                    out.writeInt(data.length);
+                    out.write(data);
+                }
+            }
+
+            // Replaces the file atomically, so a crash while writing won't corrupt the last checkpoint
+            if(!temp.renameTo(file)) throw new IOException("Couldn't replace " + file);
+
+            writtenVersion = queue.getVersion();
+        } catch(IOException ex) {
+            Log.w(Utils.LOG, "Couldn't save the queue", ex);
+        }
+    }
+
+}
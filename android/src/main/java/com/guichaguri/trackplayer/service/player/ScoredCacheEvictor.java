@@ -0,0 +1,349 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.util.Log;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import com.guichaguri.trackplayer.service.Utils;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Evicts whole tracks based on a score that combines how often and how recently they were played (LRFU).
+ *
+ * Every play reported by the player through {@link #recordPlay(String)} adds one to the score of a track,
+ * and the score halves every {@link #HALF_LIFE}. Reads from the cache, such as prefetching, don't count as plays.
+ * A track played every day outlives a bunch of tracks that were played once, while a track that is no longer played
+ * slowly loses its score until it's evicted.
+ *
+ * The budget is the maximum cache size, reduced when the device is running out of disk space.
+ * Pinned tracks are never evicted.
+ *
+ * @author Guichaguri
+ */
+public class ScoredCacheEvictor implements CacheEvictor {
+
+    private static final int MAGIC = 0x54505331; // TPS1
+
+    private static final long HALF_LIFE = 7L * 24 * 60 * 60 * 1000;
+
+    // Plays of the same track in a short interval, such as restarting it, count as a single play
+    private static final long MIN_PLAY_INTERVAL = 5 * 60 * 1000;
+
+    // Tracks read recently are kept, as they are most likely being played
+    private static final long ACTIVE_INTERVAL = 60 * 1000;
+
+    // The free disk space that the cache won't take
+    private static final long MIN_FREE_SPACE = 50L * 1024 * 1024;
+    private static final int FREE_SPACE_PERCENT = 5;
+
+    private static final long FREE_SPACE_CHECK_INTERVAL = 30 * 1000;
+
+    public interface Listener {
+
+        /**
+         * Called from the cache thread after tracks are evicted
+         * @param budget The amount of bytes the cache can use
+         * @param size The cache size after the eviction
+         * @param evicted The evicted tracks
+         */
+        void onEviction(long budget, long size, List<Eviction> evicted);
+
+    }
+
+    public static final class Eviction {
+        public final String key;
+        public final long bytes;
+        public final double score;
+
+        Eviction(String key, long bytes, double score) {
+            this.key = key;
+            this.bytes = bytes;
+            this.score = score;
+        }
+    }
+
+    private static final class Entry {
+        final TreeSet<CacheSpan> spans = new TreeSet<>();
+        long size;
+        double score;
+        long lastPlay;
+        long lastAccess;
+    }
+
+    private long maxBytes;
+    private final Set<String> pinnedKeys;
+    private final File directory;
+    private final File scoresFile;
+    private final Listener listener;
+    private final Runnable playListener;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private long currentSize;
+    private long budget;
+    private long lastFreeSpaceCheck = 0;
+    private boolean initialized = false;
+
+    /**
+     * @param maxBytes The maximum cache size
+     * @param pinnedKeys The cache keys that must not be evicted, which can be changed from any thread
+     * @param directory The cache directory, used to check the free disk space
+     * @param scoresFile The file the scores are saved to, so they're kept between sessions
+     * @param listener The listener that receives the eviction decisions or null
+     * @param playListener Called from the thread that recorded the play when it's counted, or null
+     */
+    public ScoredCacheEvictor(long maxBytes, Set<String> pinnedKeys, File directory, File scoresFile,
+                              Listener listener, Runnable playListener) {
+        this.maxBytes = maxBytes;
+        this.pinnedKeys = pinnedKeys;
+        this.directory = directory;
+        this.scoresFile = scoresFile;
+        this.listener = listener;
+        this.playListener = playListener;
+        this.budget = maxBytes;
+
+        loadScores();
+    }
+
+    /**
+     * Changes the maximum cache size, which is applied when the next span is added
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.lastFreeSpaceCheck = 0;
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+        return true;
+    }
+
+    @Override
+    public synchronized void onCacheInitialized() {
+        initialized = true;
+
+        // Forgets the scores of the tracks that are no longer in the cache
+        Iterator<Entry> it = entries.values().iterator();
+        while(it.hasNext()) {
+            if(it.next().spans.isEmpty()) it.remove();
+        }
+    }
+
+    @Override
+    public synchronized void onStartFile(Cache cache, String key, long position, long length) {
+        onAccess(key, System.currentTimeMillis());
+        if(length != C.LENGTH_UNSET) evict(cache, length);
+    }
+
+    @Override
+    public synchronized void onSpanAdded(Cache cache, CacheSpan span) {
+        Entry entry = getEntry(span.key);
+        entry.spans.add(span);
+        entry.size += span.length;
+        currentSize += span.length;
+
+        // Spans loaded from the disk haven't been played in this session, but their timestamps tell when they were
+        if(!initialized && entry.lastPlay == 0) {
+            entry.lastPlay = span.lastTouchTimestamp;
+            entry.score = 1;
+        }
+
+        evict(cache, 0);
+    }
+
+    @Override
+    public synchronized void onSpanRemoved(Cache cache, CacheSpan span) {
+        Entry entry = entries.get(span.key);
+        if(entry == null || !entry.spans.remove(span)) return;
+
+        entry.size -= span.length;
+        currentSize -= span.length;
+
+        if(entry.spans.isEmpty()) entries.remove(span.key);
+    }
+
+    @Override
+    public synchronized void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+        Entry entry = getEntry(newSpan.key);
+        if(entry.spans.remove(oldSpan)) entry.size -= oldSpan.length;
+        entry.spans.add(newSpan);
+        entry.size += newSpan.length;
+
+        onAccess(newSpan.key, newSpan.lastTouchTimestamp);
+    }
+
+    /**
+     * Saves the scores to the disk
+     */
+    public void saveScores() {
+        Map<String, double[]> scores = new HashMap<>();
+        long now = System.currentTimeMillis();
+
+        synchronized(this) {
+            for(Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                scores.put(e.getKey(), new double[] {getScore(entry, now), entry.lastPlay});
+            }
+        }
+
+        File temp = new File(scoresFile.getParentFile(), scoresFile.getName() + ".tmp");
+
+        try {
+            try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeLong(now);
+                out.writeInt(scores.size());
+
+                for(Map.Entry<String, double[]> e : scores.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    out.writeDouble(e.getValue()[0]);
+                    out.writeLong((long)e.getValue()[1]);
+                }
+            }
+
+            if(!temp.renameTo(scoresFile)) throw new IOException("Couldn't replace " + scoresFile);
+        } catch(IOException ex) {
+            Log.w(Utils.LOG, "Couldn't save the cache scores", ex);
+        }
+    }
+
+    private void loadScores() {
+        if(!scoresFile.exists()) return;
+
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(scoresFile)))) {
+            if(in.readInt() != MAGIC) return;
+
+            long time = in.readLong();
+            int count = in.readInt();
+
+            for(int i = 0; i < count; i++) {
+                Entry entry = getEntry(in.readUTF());
+                double score = in.readDouble();
+                entry.lastPlay = in.readLong();
+
+                // The saved score was decayed to the time it was saved, so we'll bring it back to the last play
+                entry.score = score * Math.pow(2, (double)(time - entry.lastPlay) / HALF_LIFE);
+            }
+        } catch(IOException ex) {
+            Log.w(Utils.LOG, "Couldn't load the cache scores", ex);
+        }
+    }
+
+    private Entry getEntry(String key) {
+        Entry entry = entries.get(key);
+
+        if(entry == null) {
+            entry = new Entry();
+            entries.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Counts a play of a track, which doesn't need to be in the cache yet
+     * @param key The cache key of the track
+     */
+    public synchronized void recordPlay(String key) {
+        long time = System.currentTimeMillis();
+        Entry entry = getEntry(key);
+        entry.lastAccess = Math.max(entry.lastAccess, time);
+
+        if(time - entry.lastPlay < MIN_PLAY_INTERVAL) return;
+
+        entry.score = getScore(entry, time) + 1;
+        entry.lastPlay = time;
+
+        if(playListener != null) playListener.run();
+    }
+
+    /**
+     * Updates the recency of a track, which keeps it from being evicted while it's being read
+     */
+    private void onAccess(String key, long time) {
+        Entry entry = getEntry(key);
+        entry.lastAccess = Math.max(entry.lastAccess, time);
+    }
+
+    private static double getScore(Entry entry, long time) {
+        if(entry.lastPlay == 0) return 0;
+        return entry.score * Math.pow(2, -(double)(time - entry.lastPlay) / HALF_LIFE);
+    }
+
+    private void updateBudget(long now) {
+        if(now - lastFreeSpaceCheck < FREE_SPACE_CHECK_INTERVAL) return;
+        lastFreeSpaceCheck = now;
+
+        long total = directory.getTotalSpace();
+        long usable = directory.getUsableSpace();
+        if(total <= 0) return;
+
+        // The cache can grow into the free space, as long as some of it is left to the rest of the device
+        long reserved = Math.max(MIN_FREE_SPACE, total * FREE_SPACE_PERCENT / 100);
+        budget = Math.max(0, Math.min(maxBytes, currentSize + usable - reserved));
+    }
+
+    private void evict(Cache cache, long requiredSpace) {
+        if(!initialized) return;
+
+        long now = System.currentTimeMillis();
+        updateBudget(now);
+
+        if(currentSize + requiredSpace <= budget) return;
+
+        // Picks the tracks first, as removing them changes the entries
+        List<Map.Entry<String, Entry>> candidates = new ArrayList<>();
+
+        for(Map.Entry<String, Entry> e : entries.entrySet()) {
+            if(pinnedKeys.contains(e.getKey())) continue;
+            if(now - e.getValue().lastAccess < ACTIVE_INTERVAL) continue;
+            if(e.getValue().spans.isEmpty()) continue;
+            candidates.add(e);
+        }
+
+        Collections.sort(candidates, (a, b) -> Double.compare(getScore(a.getValue(), now), getScore(b.getValue(), now)));
+
+        List<Eviction> evicted = new ArrayList<>();
+        List<CacheSpan> spans = new ArrayList<>();
+        long size = currentSize;
+
+        for(Map.Entry<String, Entry> e : candidates) {
+            if(size + requiredSpace <= budget) break;
+
+            Entry entry = e.getValue();
+            evicted.add(new Eviction(e.getKey(), entry.size, getScore(entry, now)));
+            spans.addAll(entry.spans);
+            size -= entry.size;
+        }
+
+        if(evicted.isEmpty()) return;
+
+        for(CacheSpan span : spans) {
+            try {
+                cache.removeSpan(span);
+            } catch(Exception ex) {
+                // Ignore, the span will be evicted next time
+            }
+        }
+
+        Log.d(Utils.LOG, "Evicted " + evicted.size() + " tracks from the cache, using " + currentSize + " of " + budget + " bytes");
+
+        if(listener != null) listener.onEviction(budget, currentSize, evicted);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.guichaguri.trackplayer.service.player;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.cache.Cache;
+import com.google.android.exoplayer2.upstream.cache.CacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.CacheSpan;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Evicts the least recently used spans when the cache is full, skipping the ones from pinned tracks.
+ *
+ * Pinned tracks don't count towards the eviction, so the cache might grow beyond the limit when most of it is pinned.
+ *
+ * @author Guichaguri
+ */
+public class TrackCacheEvictor implements CacheEvictor {
+
+    private volatile long maxBytes;
+    private final Set<String> pinnedKeys;
+    private final TreeSet<CacheSpan> spans = new TreeSet<>(TrackCacheEvictor::compare);
+
+    private long currentSize;
+
+    /**
+     * @param maxBytes The maximum cache size
+     * @param pinnedKeys The cache keys that must not be evicted, which can be changed from any thread
+     */
+    public TrackCacheEvictor(long maxBytes, Set<String> pinnedKeys) {
+        this.maxBytes = maxBytes;
+        this.pinnedKeys = pinnedKeys;
+    }
+
+    /**
+     * Changes the maximum cache size, which is applied when the next span is added
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    public boolean requiresCacheSpanTouches() {
+        return true;
+    }
+
+    @Override
+    public void onCacheInitialized() {
+        // Do nothing
+    }
+
+    @Override
+    public void onStartFile(Cache cache, String key, long position, long length) {
+        if(length != C.LENGTH_UNSET) evict(cache, length);
+    }
+
+    @Override
+    public void onSpanAdded(Cache cache, CacheSpan span) {
+        spans.add(span);
+        currentSize += span.length;
+        evict(cache, 0);
+    }
+
+    @Override
+    public void onSpanRemoved(Cache cache, CacheSpan span) {
+        spans.remove(span);
+        currentSize -= span.length;
+    }
+
+    @Override
+    public void onSpanTouched(Cache cache, CacheSpan oldSpan, CacheSpan newSpan) {
+        onSpanRemoved(cache, oldSpan);
+        onSpanAdded(cache, newSpan);
+    }
+
+    private void evict(Cache cache, long requiredSpace) {
+        if(currentSize + requiredSpace <= maxBytes) return;
+
+        // Picks the spans first, as removing them changes the set
+        List<CacheSpan> evicted = new ArrayList<>();
+        long size = currentSize;
+
+        for(CacheSpan span : spans) {
+            if(size + requiredSpace <= maxBytes) break;
+            if(pinnedKeys.contains(span.key)) continue;
+
+            evicted.add(span);
+            size -= span.length;
+        }
+
+        for(CacheSpan span : evicted) {
+            try {
+                cache.removeSpan(span);
+            } catch(Exception ex) {
+                // Ignore, the span will be evicted next time
+            }
+        }
+    }
+
+    private static int compare(CacheSpan a, CacheSpan b) {
+        if(a.lastTouchTimestamp != b.lastTouchTimestamp) {
+            return a.lastTouchTimestamp < b.lastTouchTimestamp ? -1 : 1;
+        }
+        return a.compareTo(b);
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.net.Uri;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheKeyFactory;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Builds cache keys that stay the same when a URL is signed again.
+ *
+ * The track's cacheKey is used when it's set. Otherwise, the ignored query parameters are removed from the URL.
+ *
+ * @author Guichaguri
+ */
+public class TrackCacheKeyFactory implements CacheKeyFactory {
+
+    private final Set<String> ignoredParams;
+
+    public TrackCacheKeyFactory(Collection<String> ignoredParams) {
+        this.ignoredParams = new HashSet<>(ignoredParams);
+    }
+
+    @Override
+    public String buildCacheKey(DataSpec dataSpec) {
+        if(dataSpec.key != null) return dataSpec.key;
+
+        Uri uri = dataSpec.uri;
+        if(ignoredParams.isEmpty() || uri.isOpaque() || uri.getQuery() == null) return uri.toString();
+
+        Uri.Builder builder = uri.buildUpon().clearQuery();
+
+        for(String param : uri.getQueryParameterNames()) {
+            if(ignoredParams.contains(param)) continue;
+
+            for(String value : uri.getQueryParameters(param)) {
+                builder.appendQueryParameter(param, value);
+            }
+        }
+
+        return builder.build().toString();
+    }
+
+}
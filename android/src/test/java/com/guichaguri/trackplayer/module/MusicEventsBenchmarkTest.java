@@ -0,0 +1,168 @@
+package com.guichaguri.trackplayer.module;
+
+import android.content.Intent;
+import android.os.Bundle;
+import com.facebook.react.bridge.JavaOnlyMap;
+import com.facebook.react.bridge.JavaScriptModule;
+import com.facebook.react.bridge.ReactContext;
+import com.facebook.react.bridge.WritableMap;
+import com.facebook.react.modules.core.DeviceEventManagerModule.RCTDeviceEventEmitter;
+import java.lang.management.ManagementFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the latency and the allocations of each event sent from the service to JS.
+ *
+ * The baseline repeats the work the events went through with broadcasts: copying the payload into a bundle
+ * and an intent, converting it back into a map and looking up the JS module.
+ * The broadcast dispatch itself is left out, so the baseline is a lower bound of the previous cost.
+ *
+ * @author Guichaguri
+ */
+@RunWith(RobolectricTestRunner.class)
+public class MusicEventsBenchmarkTest {
+
+    private static final int EVENT_COUNT = 100000;
+
+    private CountingContext context;
+    private MusicEvents events;
+
+    @Before
+    public void setUp() {
+        context = new CountingContext();
+        events = new MusicEvents(context);
+        events.register();
+    }
+
+    @After
+    public void tearDown() {
+        events.unregister();
+    }
+
+    @Test
+    public void eventsAreDeliveredWithACachedEmitter() {
+        for(int i = 0; i < 10; i++) MusicEvents.emit(MusicEvents.PLAYBACK_PROGRESS, createPayload(i));
+
+        assertEquals(10, context.emitter.count);
+        assertEquals(1, context.lookups);
+    }
+
+    @Test
+    public void eventsAreDroppedWhenUnregistered() {
+        events.unregister();
+        MusicEvents.emit(MusicEvents.PLAYBACK_PROGRESS, createPayload(0));
+
+        assertEquals(0, context.emitter.count);
+    }
+
+    @Test
+    public void directEventsAreCheaperThanBroadcasts() {
+        // Warms up both paths, so class loading and compilation aren't measured
+        for(int i = 0; i < EVENT_COUNT; i++) {
+            MusicEvents.emit(MusicEvents.PLAYBACK_PROGRESS, createPayload(i));
+            emitThroughIntent(createPayload(i));
+        }
+
+        long bytes = getAllocatedBytes();
+        long time = System.nanoTime();
+        for(int i = 0; i < EVENT_COUNT; i++) MusicEvents.emit(MusicEvents.PLAYBACK_PROGRESS, createPayload(i));
+        long directNanos = (System.nanoTime() - time) / EVENT_COUNT;
+        long directBytes = (getAllocatedBytes() - bytes) / EVENT_COUNT;
+
+        bytes = getAllocatedBytes();
+        time = System.nanoTime();
+        for(int i = 0; i < EVENT_COUNT; i++) emitThroughIntent(createPayload(i));
+        long intentNanos = (System.nanoTime() - time) / EVENT_COUNT;
+        long intentBytes = (getAllocatedBytes() - bytes) / EVENT_COUNT;
+
+        System.out.println("Direct events: " + directNanos + "ns and " + directBytes + " bytes per event");
+        System.out.println("Intent events: " + intentNanos + "ns and " + intentBytes + " bytes per event");
+
+        assertTrue("Direct events allocate " + directBytes + " bytes, against " + intentBytes,
+                directBytes < intentBytes);
+    }
+
+    /**
+     * Sends an event the way it was sent through broadcasts
+     */
+    private void emitThroughIntent(WritableMap data) {
+        Bundle bundle = toBundle(data);
+
+        Intent intent = new Intent("com.guichaguri.trackplayer.event");
+        intent.putExtra("event", MusicEvents.PLAYBACK_PROGRESS);
+        intent.putExtra("data", bundle);
+
+        Bundle received = intent.getBundleExtra("data");
+        JavaOnlyMap map = new JavaOnlyMap();
+        for(String key : received.keySet()) map.putDouble(key, received.getDouble(key));
+
+        context.getJSModule(RCTDeviceEventEmitter.class).emit(intent.getStringExtra("event"), map);
+    }
+
+    private static Bundle toBundle(WritableMap data) {
+        Bundle bundle = new Bundle();
+        bundle.putDouble("position", data.getDouble("position"));
+        bundle.putDouble("bufferedPosition", data.getDouble("bufferedPosition"));
+        bundle.putDouble("duration", data.getDouble("duration"));
+        return bundle;
+    }
+
+    private static WritableMap createPayload(int i) {
+        WritableMap data = new JavaOnlyMap();
+        data.putDouble("position", i);
+        data.putDouble("bufferedPosition", i + 10);
+        data.putDouble("duration", 180);
+        return data;
+    }
+
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * A React context with an active instance, which counts the JS module lookups
+     */
+    private static final class CountingContext extends ReactContext {
+
+        private final CountingEmitter emitter = new CountingEmitter();
+        private int lookups = 0;
+
+        private CountingContext() {
+            super(RuntimeEnvironment.application);
+        }
+
+        @Override
+        public boolean hasActiveCatalystInstance() {
+            return true;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T extends JavaScriptModule> T getJSModule(Class<T> jsInterface) {
+            lookups++;
+            return (T)emitter;
+        }
+
+    }
+
+    private static final class CountingEmitter implements RCTDeviceEventEmitter {
+
+        private int count = 0;
+
+        @Override
+        public void emit(String eventName, Object data) {
+            count++;
+        }
+
+    }
+
+}
@@ -0,0 +1,130 @@
+package com.guichaguri.trackplayer.service;
+
+import android.os.Bundle;
+import android.os.Looper;
+import com.guichaguri.trackplayer.service.metadata.MetadataManager;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.LooperMode;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks the threading rules: the commands run in the player thread,
+ * and the session and notification updates are sent back to the main thread.
+ *
+ * @author Guichaguri
+ */
+@RunWith(RobolectricTestRunner.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class ThreadingTest {
+
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private RecordingService service;
+
+    @Before
+    public void setUp() {
+        service = Robolectric.buildService(RecordingService.class).create().get();
+        service.startPlayerThread();
+    }
+
+    @After
+    public void tearDown() {
+        service.destroy();
+    }
+
+    @Test
+    public void commandsRunInPlayerThread() throws Exception {
+        MusicBinder binder = new MusicBinder(service, null);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        AtomicReference<Looper> looper = new AtomicReference<>();
+
+        runAndWait(binder, () -> {
+            thread.set(Thread.currentThread());
+            looper.set(Looper.myLooper());
+        });
+
+        assertEquals("TrackPlayer", thread.get().getName());
+        assertSame(service.playerThread.getLooper(), looper.get());
+        assertNotSame(Looper.getMainLooper(), looper.get());
+    }
+
+    @Test
+    public void playerThreadStopsWhenDestroyed() throws Exception {
+        Thread thread = service.playerThread;
+
+        service.destroy();
+        thread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+
+        assertFalse(thread.isAlive());
+    }
+
+    @Test
+    public void notificationUpdatesRunInMainThread() throws Exception {
+        MusicBinder binder = new MusicBinder(service, null);
+        MetadataManager metadata = new MetadataManager(service, null);
+
+        runAndWait(binder, () -> metadata.updateOptions(new Bundle()));
+
+        // The update was posted to the main thread instead of running in the player thread
+        assertTrue(service.foregroundThreads.isEmpty());
+        assertFalse(shadowOf(Looper.getMainLooper()).isIdle());
+
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertFalse(service.foregroundThreads.isEmpty());
+        for(Thread thread : service.foregroundThreads) assertSame(Looper.getMainLooper().getThread(), thread);
+    }
+
+    @Test
+    public void notificationUpdatesFromMainThreadRunImmediately() {
+        MetadataManager metadata = new MetadataManager(service, null);
+
+        metadata.updateOptions(new Bundle());
+
+        assertEquals(1, service.foregroundThreads.size());
+        assertTrue(shadowOf(Looper.getMainLooper()).isIdle());
+    }
+
+    private static void runAndWait(MusicBinder binder, Runnable r) throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+
+        binder.post(() -> {
+            r.run();
+            latch.countDown();
+        });
+
+        assertTrue(latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Records the threads the foreground state is changed from
+     */
+    public static class RecordingService extends MusicService {
+
+        private final List<Thread> foregroundThreads = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void stopForeground(boolean removeNotification) {
+            foregroundThreads.add(Thread.currentThread());
+            super.stopForeground(removeNotification);
+        }
+
+    }
+
+}
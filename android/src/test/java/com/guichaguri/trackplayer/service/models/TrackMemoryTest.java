@@ -0,0 +1,104 @@
+package com.guichaguri.trackplayer.service.models;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.media.RatingCompat;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Measures the heap retained by a 10k-track queue.
+ *
+ * The tracks used to keep the whole object they were created from, so the baseline is the heap retained by those
+ * objects alone. The compact tracks have to retain less than that, even though they also hold the parsed fields.
+ *
+ * @author Guichaguri
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TrackMemoryTest {
+
+    private static final int QUEUE_SIZE = 10000;
+
+    @Test
+    public void compactQueueRetainsLessThanOriginalItems() {
+        Context context = RuntimeEnvironment.application;
+
+        long before = usedHeap();
+        List<Bundle> items = new ArrayList<>(QUEUE_SIZE);
+        for(int i = 0; i < QUEUE_SIZE; i++) items.add(createItem(i));
+        long itemBytes = (usedHeap() - before) / QUEUE_SIZE;
+
+        items = null;
+
+        before = usedHeap();
+        List<Track> tracks = new ArrayList<>(QUEUE_SIZE);
+        for(int i = 0; i < QUEUE_SIZE; i++) tracks.add(new Track(context, createItem(i), RatingCompat.RATING_NONE));
+        long trackBytes = (usedHeap() - before) / QUEUE_SIZE;
+
+        System.out.println("Heap per track: " + trackBytes + " bytes, original item alone: " + itemBytes + " bytes");
+
+        assertTrue("A compact track retains " + trackBytes + " bytes, the original item alone " + itemBytes,
+                trackBytes < itemBytes);
+
+        // The shared values are deduplicated between tracks
+        assertSame(tracks.get(0).userAgent, tracks.get(QUEUE_SIZE - 1).userAgent);
+        assertSame(tracks.get(0).headers, tracks.get(QUEUE_SIZE - 1).headers);
+    }
+
+    @Test
+    public void originalItemIsRebuilt() {
+        Bundle item = createItem(42);
+        item.putString("custom", "value");
+
+        Track track = new Track(RuntimeEnvironment.application, item, RatingCompat.RATING_NONE);
+        Bundle rebuilt = track.getOriginalItem();
+
+        for(String key : new String[] {"id", "url", "title", "artist", "album", "genre", "userAgent", "custom"}) {
+            assertEquals(key, item.getString(key), rebuilt.getString(key));
+        }
+
+        assertEquals(item.getDouble("duration"), rebuilt.getDouble("duration"), 0);
+        assertEquals("Bearer token", rebuilt.getBundle("headers").getString("Authorization"));
+    }
+
+    /**
+     * Creates a track object the same way the bridge does, with new string instances for every track
+     */
+    private static Bundle createItem(int i) {
+        Bundle headers = new Bundle();
+        headers.putString("Authorization", new String("Bearer token"));
+
+        Bundle item = new Bundle();
+        item.putString("id", "track-" + i);
+        item.putString("url", "https://example.com/tracks/" + i + ".mp3");
+        item.putString("title", "Title " + i);
+        item.putString("artist", "Artist " + (i % 50));
+        item.putString("album", "Album " + (i % 200));
+        item.putString("genre", "Genre " + (i % 10));
+        item.putString("userAgent", new String("Example/1.0"));
+        item.putBundle("headers", headers);
+        item.putDouble("duration", 180 + i % 120);
+        return item;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+
+        // A few collections, so objects waiting for finalization are gone too
+        for(int i = 0; i < 3; i++) {
+            System.gc();
+            System.runFinalization();
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
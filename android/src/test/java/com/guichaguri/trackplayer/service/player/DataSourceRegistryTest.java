@@ -0,0 +1,139 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v4.media.RatingCompat;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
+import com.google.android.exoplayer2.upstream.FileDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSink;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSinkFactory;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSource;
+import com.google.android.exoplayer2.upstream.cache.CacheDataSourceFactory;
+import com.google.android.exoplayer2.upstream.cache.NoOpCacheEvictor;
+import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.Util;
+import com.guichaguri.trackplayer.service.models.Track;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the tracks share their data source factories, and measures the allocations per added track.
+ *
+ * The baseline builds the factories for every track, as the tracks did before the registry.
+ *
+ * @author Guichaguri
+ */
+@RunWith(RobolectricTestRunner.class)
+public class DataSourceRegistryTest {
+
+    private static final int TRACK_COUNT = 1000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private Context context;
+    private SimpleCache cache;
+    private DataSourceRegistry registry;
+
+    @Before
+    public void setUp() throws Exception {
+        context = RuntimeEnvironment.application;
+        cache = new SimpleCache(folder.newFolder("cache"), new NoOpCacheEvictor());
+        registry = new DataSourceRegistry(context, cache, null,
+                new TrackCacheKeyFactory(Collections.emptyList()), null, null);
+    }
+
+    @After
+    public void tearDown() {
+        cache.release();
+    }
+
+    @Test
+    public void tracksWithTheSameSettingsShareFactories() {
+        DataSource.Factory first = registry.get(createTrack(1, "Example/1.0", "token"));
+
+        assertSame(first, registry.get(createTrack(2, "Example/1.0", "token")));
+        assertNotSame(first, registry.get(createTrack(3, "Example/2.0", "token")));
+        assertNotSame(first, registry.get(createTrack(4, "Example/1.0", "other")));
+    }
+
+    @Test
+    public void sharedFactoriesAllocateLessPerTrack() {
+        List<Track> tracks = new ArrayList<>(TRACK_COUNT);
+        for(int i = 0; i < TRACK_COUNT; i++) tracks.add(createTrack(i, "Example/1.0", "token"));
+
+        // Warms up both paths, so class loading isn't measured
+        for(Track track : tracks) {
+            registry.get(track);
+            createFactory(track);
+        }
+
+        long start = getAllocatedBytes();
+        for(Track track : tracks) registry.get(track);
+        long sharedBytes = (getAllocatedBytes() - start) / TRACK_COUNT;
+
+        start = getAllocatedBytes();
+        for(Track track : tracks) createFactory(track);
+        long perTrackBytes = (getAllocatedBytes() - start) / TRACK_COUNT;
+
+        System.out.println("Allocated per add: " + sharedBytes + " bytes shared, " + perTrackBytes + " bytes per track");
+
+        assertTrue("Shared factories allocate " + sharedBytes + " bytes per track, against " + perTrackBytes,
+                sharedBytes < perTrackBytes);
+    }
+
+    /**
+     * Builds the factories of a track the way it was done for every track before the registry
+     */
+    private DataSource.Factory createFactory(Track track) {
+        DefaultHttpDataSourceFactory factory = new DefaultHttpDataSourceFactory(
+                track.userAgent == null ? Util.getUserAgent(context, "react-native-track-player") : track.userAgent,
+                null,
+                DefaultHttpDataSource.DEFAULT_CONNECT_TIMEOUT_MILLIS,
+                DefaultHttpDataSource.DEFAULT_READ_TIMEOUT_MILLIS,
+                true
+        );
+
+        if(track.headers != null) factory.getDefaultRequestProperties().set(track.headers);
+
+        return new CacheDataSourceFactory(cache, factory, new FileDataSourceFactory(),
+                new CacheDataSinkFactory(cache, CacheDataSink.DEFAULT_FRAGMENT_SIZE),
+                CacheDataSource.FLAG_IGNORE_CACHE_ON_ERROR, null);
+    }
+
+    private Track createTrack(int i, String userAgent, String token) {
+        Bundle headers = new Bundle();
+        headers.putString("Authorization", "Bearer " + token);
+
+        Bundle item = new Bundle();
+        item.putString("id", "track-" + i);
+        item.putString("url", "https://example.com/tracks/" + i + ".mp3");
+        item.putString("title", "Title " + i);
+        item.putString("userAgent", userAgent);
+        item.putBundle("headers", headers);
+
+        return new Track(context, item, RatingCompat.RATING_NONE);
+    }
+
+    private static long getAllocatedBytes() {
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.guichaguri.trackplayer.service.player;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.Bundle;
+import android.support.v4.media.RatingCompat;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.guichaguri.trackplayer.service.models.Track;
+import java.util.Collections;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the default HTTP stack with the pooled OkHttp stack against a local server,
+ * counting the connections opened and the time to the first byte of each track.
+ *
+ * The local server only speaks HTTP/1.1, so this measures the connection reuse and not the HTTP/2 multiplexing.
+ *
+ * @author Guichaguri
+ */
+@RunWith(RobolectricTestRunner.class)
+public class HttpStackBenchmarkTest {
+
+    private static final int TRACK_COUNT = 20;
+    private static final int TRACK_SIZE = 64 * 1024;
+
+    private MockWebServer server;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    @Test
+    public void pooledStackReusesConnections() throws Exception {
+        Result defaultStack = run(null);
+        Result pooledStack = run(new OkHttpClient());
+
+        System.out.println("Default stack: " + defaultStack);
+        System.out.println("Pooled stack: " + pooledStack);
+
+        // Every track goes through the same connection
+        assertEquals(1, pooledStack.connections);
+        assertTrue(pooledStack.connections <= defaultStack.connections);
+    }
+
+    private Result run(OkHttpClient client) throws Exception {
+        Context context = RuntimeEnvironment.application;
+        DataSourceRegistry registry = new DataSourceRegistry(context, null, client,
+                new TrackCacheKeyFactory(Collections.emptyList()), null, null);
+
+        Result result = new Result();
+        byte[] buffer = new byte[8 * 1024];
+
+        for(int i = 0; i < TRACK_COUNT; i++) {
+            server.enqueue(new MockResponse().setBody(new Buffer().write(new byte[TRACK_SIZE])));
+
+            Track track = createTrack(context, server.url("/tracks/" + i + ".mp3").toString());
+            DataSource source = registry.get(track).createDataSource();
+
+            long start = System.nanoTime();
+
+            try {
+                source.open(new DataSpec(track.uri));
+
+                int read = source.read(buffer, 0, buffer.length);
+                result.firstByteNanos += System.nanoTime() - start;
+
+                while(read != C.RESULT_END_OF_INPUT) read = source.read(buffer, 0, buffer.length);
+            } finally {
+                source.close();
+            }
+
+            // The first request of each connection has the sequence number 0
+            if(server.takeRequest().getSequenceNumber() == 0) result.connections++;
+        }
+
+        return result;
+    }
+
+    private static Track createTrack(Context context, String url) {
+        Bundle item = new Bundle();
+        item.putString("id", Uri.parse(url).getLastPathSegment());
+        item.putString("url", url);
+        item.putString("title", "Benchmark");
+
+        return new Track(context, item, RatingCompat.RATING_NONE);
+    }
+
+    private static final class Result {
+        private int connections = 0;
+        private long firstByteNanos = 0;
+
+        @Override
+        public String toString() {
+            return connections + " connections, " + (firstByteNanos / TRACK_COUNT / 1000) + "us to the first byte";
+        }
+    }
+
+}
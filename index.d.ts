@@ -8,6 +8,10 @@ declare namespace RNTrackPlayer {
     | "playback-state"
     | "playback-error"
     | "playback-queue-ended"
+    | "playback-queue-add-progress"
+    | "playback-progress"
+    | "cache-eviction"
+    | "download-changed"
     | "playback-track-changed"
     | "remote-play"
     | "remote-play-id"
@@ -66,6 +70,7 @@ declare namespace RNTrackPlayer {
     type?: TrackType;
     userAgent?: string;
     contentType?: string;
+    cacheKey?: string;
     pitchAlgorithm?: PitchAlgorithm;
     [key: string]: any;
   }
@@ -75,6 +80,16 @@ declare namespace RNTrackPlayer {
     maxBuffer?: number;
     playBuffer?: number;
     maxCacheSize?: number;
+    lazyLoadWindow?: number;
+    persistQueue?: boolean;
+    httpStack?: 'default' | 'okhttp';
+    prefetchCount?: number;
+    prefetchSize?: number;
+    memoryCacheSize?: number;
+    cachePolicy?: 'scored' | 'lru';
+    cacheKeyIgnoredParams?: string[];
+    enableDownloads?: boolean;
+    maxParallelDownloads?: number;
     iosCategory?: 'playback' | 'playAndRecord' | 'multiRoute' | 'ambient' | 'soloAmbient' | 'record';
     iosCategoryMode?: 'default' | 'gameChat' | 'measurement' | 'moviePlayback' | 'spokenAudio' | 'videoChat' | 'videoRecording' | 'voiceChat' | 'voicePrompt';
     iosCategoryOptions?: Array<'mixWithOthers' | 'duckOthers' | 'interruptSpokenAudioAndMixWithOthers' | 'allowBluetooth' | 'allowBluetoothA2DP' | 'allowAirPlay' | 'defaultToSpeaker'>;
@@ -96,6 +111,7 @@ declare namespace RNTrackPlayer {
     dislikeOptions?: FeedbackOptions;
     bookmarkOptions?: FeedbackOptions;
     stopWithApp?: boolean;
+    progressUpdateInterval?: number;
 
     capabilities?: Capability[];
     notificationCapabilities?: Capability[];
@@ -120,7 +136,9 @@ declare namespace RNTrackPlayer {
   // Player Queue Commands
 
   export function add(tracks: Track | Track[], insertBeforeId?: string): Promise<void>;
+  export function setQueue(tracks: Track[]): Promise<void>;
   export function remove(trackIds: string | string[]): Promise<void>;
+  export function removeRange(fromId: string, toId: string): Promise<void>;
   export function skip(trackId: string): Promise<void>;
   export function skipToNext(): Promise<void>;
   export function skipToPrevious(): Promise<void>;
@@ -142,7 +160,8 @@ declare namespace RNTrackPlayer {
 
   // Player Getters
 
-  export function getQueue(): Promise<Track[]>;
+  export function getQueue(offset?: number, limit?: number): Promise<Track[]>;
+  export function getQueueVersion(): Promise<number | null>;
   export function getTrack(id: string): Promise<Track>;
   export function getCurrentTrack(): Promise<string>;
   export function getVolume(): Promise<number>;
@@ -152,6 +171,71 @@ declare namespace RNTrackPlayer {
   export function getState(): Promise<State>;
   export function getRate(): Promise<number>;
 
+  export interface PlaybackSnapshot {
+    state: State;
+    track: string | null;
+    position: number;
+    bufferedPosition: number;
+    duration: number;
+    rate: number;
+    volume: number;
+  }
+
+  export function getPlaybackSnapshot(): PlaybackSnapshot | null;
+
+  // Batching
+
+  export interface BatchCommand {
+    command: string;
+    args?: any[];
+  }
+
+  export interface BatchResult {
+    result?: any;
+    error?: {
+      code: string;
+      message: string | null;
+    };
+  }
+
+  export function executeBatch(commands: BatchCommand[]): Promise<BatchResult[]>;
+
+  // Cache Commands
+
+  export interface CacheInfo {
+    size: number;
+    used: number;
+    pinned: number;
+  }
+
+  export interface CachedProgress {
+    length: number;
+    cached: number;
+    ranges: { start: number; end: number }[];
+    pinned: boolean;
+  }
+
+  export function getCacheInfo(): Promise<CacheInfo>;
+  export function getCachedProgress(id: string): Promise<CachedProgress>;
+  export function pinTrack(id: string): Promise<void>;
+  export function unpinTrack(id: string): Promise<void>;
+  export function evictTrack(id: string): Promise<void>;
+  export function clearCache(): Promise<void>;
+
+  // Download Commands
+
+  export interface DownloadInfo {
+    id: string;
+    state: 'queued' | 'downloading' | 'completed' | 'failed' | 'removing' | 'restarting' | 'stopped';
+    bytes: number;
+    progress: number;
+    track: Track;
+  }
+
+  export function download(tracks: Track | Track[]): Promise<void>;
+  export function removeDownload(id: string): Promise<void>;
+  export function getDownloads(): Promise<DownloadInfo[]>;
+
   // Components
 
   export interface ProgressComponentState {
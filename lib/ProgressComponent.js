@@ -1,5 +1,7 @@
 import React, { Component } from 'react';
+import { Platform } from 'react-native';
 import TrackPlayer from './index.js';
+import TrackPlayerEvents from './eventTypes';
 
 class ProgressComponent extends Component {
 
@@ -15,11 +17,20 @@ class ProgressComponent extends Component {
     componentDidMount() {
         this._progressUpdates = true;
         this._updateProgress();
-        this._timer = setInterval(this._updateProgress.bind(this), 1000);
+
+        if(Platform.OS === 'android') {
+            // The native side sends the progress by itself
+            this._sub = TrackPlayer.addEventListener(TrackPlayerEvents.PLAYBACK_PROGRESS, (data) => {
+                if(this._progressUpdates) this.setState(data);
+            });
+        } else {
+            this._timer = setInterval(this._updateProgress.bind(this), 1000);
+        }
     }
 
     componentWillUnmount() {
         this._progressUpdates = false;
+        if(this._sub) this._sub.remove();
         clearInterval(this._timer);
     }
 
@@ -28,8 +39,6 @@ class ProgressComponent extends Component {
      * @private
      */
     async _updateProgress() {
-        // TODO check for performance here
-        // We can create a new native function to reduces these 3 native calls to only one, if needed
         try {
             const data = {
                 position: await TrackPlayer.getPosition(),
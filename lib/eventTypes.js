@@ -21,7 +21,11 @@ const TrackPlayerEvents = {
   PLAYBACK_STATE: 'playback-state',
   PLAYBACK_TRACK_CHANGED: 'playback-track-changed',
   PLAYBACK_QUEUE_ENDED: 'playback-queue-ended',
-  PLAYBACK_ERROR: 'playback-error'
+  PLAYBACK_QUEUE_ADD_PROGRESS: 'playback-queue-add-progress',
+  PLAYBACK_ERROR: 'playback-error',
+  PLAYBACK_PROGRESS: 'playback-progress',
+  CACHE_EVICTION: 'cache-eviction',
+  DOWNLOAD_CHANGED: 'download-changed'
 }
 
 module.exports = TrackPlayerEvents
@@ -1,4 +1,5 @@
 import { useEffect, useState, useDebugValue, useRef } from 'react';
+import { Platform } from 'react-native';
 import * as TrackPlayer from './index';
 import TrackPlayerEvents from './eventTypes';
 
@@ -116,7 +117,8 @@ const usePlaybackStateIs = (...states) => {
 
 /**
  * @description
- *   Poll for track progress for the given interval (in miliseconds)
+ *   Poll for track progress for the given interval (in miliseconds).
+ *   On Android, the progress is sent by the native side every `progressUpdateInterval` instead
  * @param {number} interval - ms interval
  * @returns {[
  *   {
@@ -145,11 +147,24 @@ const useTrackPlayerProgress = (interval = 1000) => {
         setState({ position, bufferedPosition, duration });
     }
 
+    const isAndroid = Platform.OS === 'android';
+
+    useEffect(() => {
+        if (!isAndroid) return;
+
+        getProgress();
+        const sub = TrackPlayer.addEventListener(TrackPlayerEvents.PLAYBACK_PROGRESS, data => {
+            setState({ position: data.position, bufferedPosition: data.bufferedPosition, duration: data.duration });
+        });
+
+        return () => sub.remove();
+    }, []);
+
     const needsPoll = usePlaybackStateIs(
         TrackPlayer.STATE_PLAYING,
         TrackPlayer.STATE_BUFFERING
     );
-    useInterval(getProgress, needsPoll ? interval : null);
+    useInterval(getProgress, needsPoll && !isAndroid ? interval : null);
     return state;
 }
 
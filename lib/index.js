@@ -14,6 +14,12 @@ function resolveUrl(url) {
     return resolveAssetSource(url) || url;
 }
 
+function unsupported(name) {
+    const error = new Error(`${name} is not supported on ${Platform.OS}`);
+    error.code = 'unsupported';
+    return Promise.reject(error);
+}
+
 function setupPlayer(options) {
     return TrackPlayer.setupPlayer(options || {});
 }
@@ -35,13 +41,7 @@ function updateOptions(data) {
     return TrackPlayer.updateOptions(data);
 }
 
-function add(tracks, insertBeforeId) {
-    if(!Array.isArray(tracks)) {
-        tracks = [tracks];
-    }
-
-    if(tracks.length < 1) return;
-
+function resolveTracks(tracks) {
     for(let i = 0; i < tracks.length; i++) {
         // Clone the object before modifying it
         tracks[i] = Object.assign({}, tracks[i]);
@@ -54,7 +54,23 @@ function add(tracks, insertBeforeId) {
         tracks[i].id = `${tracks[i].id}`
     }
 
-    return TrackPlayer.add(tracks, insertBeforeId);
+    return tracks;
+}
+
+function add(tracks, insertBeforeId) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    if(tracks.length < 1) return;
+
+    return TrackPlayer.add(resolveTracks(tracks), insertBeforeId);
+}
+
+function setQueue(tracks) {
+    if(Platform.OS !== 'android') return unsupported('setQueue');
+
+    return TrackPlayer.setQueue(resolveTracks(tracks.slice()));
 }
 
 function remove(tracks) {
@@ -65,6 +81,81 @@ function remove(tracks) {
     return TrackPlayer.remove(tracks);
 }
 
+function removeRange(fromId, toId) {
+    if(Platform.OS !== 'android') return unsupported('removeRange');
+
+    return TrackPlayer.removeRange(fromId, toId);
+}
+
+async function getQueue(offset, limit) {
+    if(Platform.OS !== 'android') {
+        const queue = await TrackPlayer.getQueue();
+        return queue.slice(offset || 0, limit == null ? undefined : (offset || 0) + limit);
+    }
+
+    // Android sends the queue serialized as JSON
+    return JSON.parse(await TrackPlayer.getQueue(offset || 0, limit == null ? -1 : limit));
+}
+
+function getQueueVersion() {
+    if(Platform.OS !== 'android') return Promise.resolve(null);
+
+    return TrackPlayer.getQueueVersion();
+}
+
+function getPlaybackSnapshot() {
+    if(Platform.OS !== 'android') return null;
+
+    return TrackPlayer.getPlaybackSnapshot();
+}
+
+const BATCH_COMMANDS = [
+    'add', 'setQueue', 'remove', 'removeRange', 'updateMetadataForTrack', 'removeUpcomingTracks',
+    'skip', 'skipToNext', 'skipToPrevious', 'reset', 'play', 'pause', 'stop', 'seekTo', 'setVolume', 'setRate',
+    'getTrack', 'getCurrentTrack', 'getVolume', 'getRate', 'getDuration', 'getBufferedPosition', 'getPosition', 'getState',
+];
+
+async function executeBatch(commands) {
+    commands = commands.map(({ command, args }) => {
+        args = args ? args.slice() : [];
+
+        if(command === 'add' || command === 'setQueue' || command === 'remove') {
+            const tracks = Array.isArray(args[0]) ? args[0].slice() : [args[0]];
+            args[0] = command === 'remove' ? tracks : resolveTracks(tracks);
+        }
+
+        return { command, args };
+    });
+
+    if(Platform.OS === 'android') return TrackPlayer.executeBatch(commands);
+
+    // Other platforms run the commands one by one
+    const results = [];
+
+    for(const { command, args } of commands) {
+        try {
+            if(!BATCH_COMMANDS.includes(command)) {
+                throw Object.assign(new Error(`The command ${command} can't be batched`), { code: 'invalid_command' });
+            }
+
+            const result = TrackPlayer[command] ? TrackPlayer[command](...args) : unsupported(command);
+            results.push({ result: await result });
+        } catch(error) {
+            results.push({ error: { code: error.code || 'unknown', message: error.message } });
+        }
+    }
+
+    return results;
+}
+
+function download(tracks) {
+    if(!Array.isArray(tracks)) {
+        tracks = [tracks];
+    }
+
+    return TrackPlayer.download(resolveTracks(tracks));
+}
+
 function registerPlaybackService(serviceFactory) {
     if (Platform.OS === 'android') {
         // Registers the headless task
@@ -172,9 +263,12 @@ module.exports.addEventListener = addEventListener;
 
 // Player Queue Commands
 module.exports.add = add;
+module.exports.setQueue = setQueue;
 module.exports.remove = remove;
+module.exports.removeRange = removeRange;
 module.exports.skip = TrackPlayer.skip;
-module.exports.getQueue = TrackPlayer.getQueue;
+module.exports.getQueue = getQueue;
+module.exports.getQueueVersion = getQueueVersion;
 module.exports.skipToNext = TrackPlayer.skipToNext;
 module.exports.skipToPrevious = TrackPlayer.skipToPrevious;
 module.exports.updateMetadataForTrack = TrackPlayer.updateMetadataForTrack;
@@ -198,6 +292,23 @@ module.exports.getPosition = TrackPlayer.getPosition;
 module.exports.getBufferedPosition = TrackPlayer.getBufferedPosition;
 module.exports.getState = TrackPlayer.getState;
 module.exports.getRate = TrackPlayer.getRate;
+module.exports.getPlaybackSnapshot = getPlaybackSnapshot;
+
+// Batching
+module.exports.executeBatch = executeBatch;
+
+// Cache Commands
+module.exports.getCacheInfo = TrackPlayer.getCacheInfo;
+module.exports.getCachedProgress = TrackPlayer.getCachedProgress;
+module.exports.pinTrack = TrackPlayer.pinTrack;
+module.exports.unpinTrack = TrackPlayer.unpinTrack;
+module.exports.evictTrack = TrackPlayer.evictTrack;
+module.exports.clearCache = TrackPlayer.clearCache;
+
+// Download Commands
+module.exports.download = download;
+module.exports.removeDownload = TrackPlayer.removeDownload;
+module.exports.getDownloads = TrackPlayer.getDownloads;
 
 // Player Event Types
 module.exports.TrackPlayerEvents = require('./eventTypes');